@@ -0,0 +1,39 @@
+package sk.nociar.jpacloner;
+
+/**
+ * Property filter which depends only on the JPA class and the property, not on the entity state. 
+ * The result is computed once per class (for all properties of the class) and cached as a bitmask, 
+ * i.e. the {@link #test(Class, String)} is not called for each entity. Class property filters should 
+ * be reused (e.g. as constants) or implement the {@link #equals(Object)} and the {@link #hashCode()}.
+ * <br/>
+ * <b>NOTE</b> this is an abstract class (not an interface) because the entity based evaluation is 
+ * provided by the library.
+ * 
+ * @author Miroslav Nociar
+ */
+public abstract class ClassPropertyFilter implements PropertyFilter {
+	
+	/**
+	 * Returns <code>true</code> if a property of a JPA class should be processed,
+	 * <code>false</code> otherwise.
+	 * 
+	 * @param jpaClass
+	 *            the raw JPA class (annotated by {@link javax.persistence.Entity} or {@link javax.persistence.Embeddable})
+	 * @param property
+	 *            the property
+	 */
+	public abstract boolean test(Class<?> jpaClass, String property);
+	
+	/**
+	 * Evaluates the filter for the class of the entity, see {@link JpaClassInfo#test(PropertyFilter, Object, String)}.
+	 * Non JPA objects (e.g. {@link java.util.Map.Entry}) pass the filter.
+	 */
+	@Override
+	public final boolean test(Object entity, String property) {
+		if (entity == null) {
+			return true;
+		}
+		JpaClassInfo classInfo = JpaClassInfo.get(entity.getClass());
+		return classInfo == null || classInfo.test(this, property);
+	}
+}
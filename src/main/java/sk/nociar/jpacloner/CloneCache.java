@@ -0,0 +1,124 @@
+package sk.nociar.jpacloner;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.Id;
+import javax.persistence.Version;
+
+import sk.nociar.jpacloner.cache.BoundedCache;
+import sk.nociar.jpacloner.graphs.GraphExplorer;
+
+/**
+ * Read-through cache of clones. The key of a clone is the root class, the {@link Id} of the root, the {@link Version}
+ * of the root (if present), the normalized patterns and the clone options (property filter, collection factory, 
+ * primitive collections). A hit skips the exploration and the cloning of the original graph. Roots without 
+ * an identifier are not cached. The cache is bounded by the size and optionally by the time to live. Example:<br/>
+ * <pre>
+ * CloneCache cache = new CloneCache(1000, 10, TimeUnit.MINUTES, CloneCache.Mode.COPY);
+ * Catalog cloned = cache.clone(catalog, "categories+.items");
+ * </pre>
+ * Please note that changes of non-root entities are not detected (the version of the root is not incremented) 
+ * unless the cached entry expires or the cache is cleared. Instances are thread safe.
+ * 
+ * @author Miroslav Nociar
+ */
+public final class CloneCache {
+	
+	/**
+	 * Returning mode of cached clones.
+	 */
+	public enum Mode {
+		/**
+		 * The cached graph is returned, it MUST NOT be modified (consider the {@link CollectionFactories#getCompactFactory()}).
+		 */
+		SHARED,
+		/**
+		 * A copy of the cached graph is returned, the copy is created by the {@link JpaCopier} i.e. without DB access.
+		 */
+		COPY
+	}
+	
+	private final BoundedCache<CloneKey, Object> cache;
+	
+	private final Mode mode;
+
+	/**
+	 * Creates the cache of clones.
+	 * 
+	 * @param maximumSize
+	 *            the maximum number of cached clones
+	 * @param timeToLive
+	 *            the time to live of cached clones, zero means no expiration
+	 * @param unit
+	 *            the unit of the time to live
+	 * @param mode
+	 *            the returning mode of cached clones
+	 */
+	public CloneCache(int maximumSize, long timeToLive, TimeUnit unit, Mode mode) {
+		if (mode == null) {
+			throw new NullPointerException();
+		}
+		this.cache = new BoundedCache<CloneKey, Object>(maximumSize, timeToLive, unit);
+		this.mode = mode;
+	}
+	
+	/**
+	 * Returns the cached clone of the JPA entity, the entity is cloned on a miss. 
+	 * For description of patterns see the {@link GraphExplorer}.
+	 */
+	public <T> T clone(T root, String... patterns) {
+		return clone(root, new CloneOptions(), patterns);
+	}
+
+	/**
+	 * Returns the cached clone of the JPA entity, the entity is cloned with the passed options on a miss. 
+	 * For description of patterns see the {@link GraphExplorer}.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T clone(T root, CloneOptions options, String... patterns) {
+		CloneKey key = CloneKey.get(root, options, false, patterns);
+		if (key == null) {
+			return JpaCloner.clone(root, options, patterns);
+		}
+		T cached = (T) cache.get(key);
+		if (cached == null) {
+			cached = (T) cache.putIfAbsent(key, JpaCloner.clone(root, options, patterns));
+		}
+		return mode == Mode.SHARED ? cached : JpaCopier.copy(cached, options.getCollectionFactory());
+	}
+	
+	/**
+	 * Removes all cached clones, metrics are not reset.
+	 */
+	public void clear() {
+		cache.clear();
+	}
+	
+	public Mode getMode() {
+		return mode;
+	}
+	
+	public int size() {
+		return cache.size();
+	}
+
+	public long getHits() {
+		return cache.getHits();
+	}
+
+	public long getMisses() {
+		return cache.getMisses();
+	}
+
+	/**
+	 * Returns the number of evicted clones (including expired clones).
+	 */
+	public long getEvictions() {
+		return cache.getEvictions();
+	}
+
+	@Override
+	public String toString() {
+		return cache.toString();
+	}
+}
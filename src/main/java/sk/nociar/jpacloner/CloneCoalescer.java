@@ -0,0 +1,150 @@
+package sk.nociar.jpacloner;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import sk.nociar.jpacloner.graphs.GraphExplorer;
+
+/**
+ * Coalescing of concurrent identical clone requests ("single flight"). The first caller clones the graph,
+ * concurrent callers with the same root (the same class and id, or the same instance if there is no id), 
+ * patterns and clone options wait and receive the result of the first caller. Nothing is cached after 
+ * the cloning finishes, for caching see {@link CloneCache}. Example:<br/>
+ * <pre>
+ * CloneCoalescer coalescer = new CloneCoalescer(CloneCache.Mode.COPY);
+ * Catalog cloned = coalescer.clone(catalog, "categories+.items");
+ * </pre>
+ * In the {@link CloneCache.Mode#SHARED} mode all callers receive the same graph which MUST NOT be modified.
+ * In the {@link CloneCache.Mode#COPY} mode waiting callers receive copies of the graph (see {@link JpaCopier}), 
+ * the first caller receives the graph itself unless a copy is needed to keep the graph intact for waiting callers.
+ * Instances are thread safe.
+ * 
+ * @author Miroslav Nociar
+ */
+public final class CloneCoalescer {
+	
+	/**
+	 * Running clone with the number of waiting callers, -1 means closed (no more waiting callers).
+	 */
+	private static final class Flight extends FutureTask<Object> {
+		private final AtomicInteger waiting = new AtomicInteger();
+		
+		private Flight(Callable<Object> callable) {
+			super(callable);
+		}
+		
+		private boolean join() {
+			for (;;) {
+				int n = waiting.get();
+				if (n < 0) {
+					return false;
+				}
+				if (waiting.compareAndSet(n, n + 1)) {
+					return true;
+				}
+			}
+		}
+		
+		private boolean close() {
+			return waiting.compareAndSet(0, -1);
+		}
+	}
+	
+	private final ConcurrentMap<CloneKey, Flight> flights = new ConcurrentHashMap<CloneKey, Flight>();
+	
+	private final CloneCache.Mode mode;
+	
+	private final AtomicLong coalesced = new AtomicLong();
+
+	public CloneCoalescer(CloneCache.Mode mode) {
+		if (mode == null) {
+			throw new NullPointerException();
+		}
+		this.mode = mode;
+	}
+	
+	/**
+	 * Clones the JPA entity, concurrent identical requests are coalesced.
+	 * For description of patterns see the {@link GraphExplorer}.
+	 */
+	public <T> T clone(T root, String... patterns) {
+		return clone(root, new CloneOptions(), patterns);
+	}
+
+	/**
+	 * Clones the JPA entity with the passed options, concurrent identical requests are coalesced.
+	 * For description of patterns see the {@link GraphExplorer}.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T clone(final T root, final CloneOptions options, final String... patterns) {
+		CloneKey key = CloneKey.get(root, options, true, patterns);
+		if (key == null) {
+			return JpaCloner.clone(root, options, patterns);
+		}
+		for (;;) {
+			Flight flight = new Flight(new Callable<Object>() {
+				@Override
+				public Object call() {
+					return JpaCloner.clone(root, options, patterns);
+				}
+			});
+			Flight running = flights.putIfAbsent(key, flight);
+			if (running == null) {
+				// the first caller
+				try {
+					flight.run();
+				} finally {
+					flights.remove(key, flight);
+				}
+				T result = (T) getResult(flight);
+				return mode == CloneCache.Mode.SHARED || flight.close() ? result : JpaCopier.copy(result, options.getCollectionFactory());
+			}
+			if (running.join()) {
+				// a waiting caller
+				coalesced.incrementAndGet();
+				T result = (T) getResult(running);
+				return mode == CloneCache.Mode.SHARED ? result : JpaCopier.copy(result, options.getCollectionFactory());
+			}
+			// the flight was closed meanwhile, try again
+		}
+	}
+	
+	private static Object getResult(Flight flight) {
+		try {
+			return flight.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the clone", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+	
+	public CloneCache.Mode getMode() {
+		return mode;
+	}
+	
+	/**
+	 * Returns the number of requests which received the result of another request.
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+	
+	@Override
+	public String toString() {
+		return "mode=" + mode + ", coalesced=" + getCoalesced() + ", running=" + flights.size();
+	}
+}
@@ -0,0 +1,507 @@
+package sk.nociar.jpacloner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+/**
+ * Single pass clone engine. Each explored entity is processed once: the clone is created on demand 
+ * (by the entity itself or by a relation pointing to it), singular relations are wired immediately.
+ * Collections are wired in the end because hash codes of clones may depend on *ToOne relations.
+ * Cloned collections are created by the {@link CollectionFactory}, element collections of basic values 
+ * are copied in bulk. Class infos are resolved once per class. Previous clones can be refreshed i.e. 
+ * recycled with only changed properties written. The engine is not thread safe.
+ * 
+ * @author Miroslav Nociar
+ */
+class CloneEngine {
+	
+	/**
+	 * Collection relation waiting for wiring.
+	 */
+	private static final class PendingCollection {
+		private final Object clone;
+		private final JpaPropertyInfo propertyInfo;
+		private final Object originalValue;
+
+		private PendingCollection(Object clone, JpaPropertyInfo propertyInfo, Object originalValue) {
+			this.clone = clone;
+			this.propertyInfo = propertyInfo;
+			this.originalValue = originalValue;
+		}
+	}
+	
+	/**
+	 * Marker of non JPA classes in the class info cache.
+	 */
+	private static final Object NO_CLASS_INFO = new Object();
+	
+	private final PropertyFilter propertyFilter;
+	
+	private final CollectionFactory collectionFactory;
+	
+	private final boolean primitiveCollections;
+	
+	private final Map<Object, Object> originalToClone;
+	
+	private final List<PendingCollection> pendingCollections = new ArrayList<PendingCollection>();
+	
+	private final Map<Class<?>, Object> classInfos = new HashMap<Class<?>, Object>();
+	
+	private Class<?> lastClass = null;
+	
+	private JpaClassInfo lastClassInfo = null;
+	
+	/**
+	 * Previous clones matched by equals (i.e. recycled instances) or <code>null</code>.
+	 */
+	private Map<Object, Object> previousClones = null;
+	
+	/**
+	 * Projected basic properties of originals, see {@link JpaExplorer#projections}.
+	 */
+	private Map<Object, Set<String>> projections = Collections.emptyMap();
+	
+	/**
+	 * Overwrite recycled clones i.e. copy all basic properties and refill collections in place.
+	 */
+	private boolean overwrite = false;
+	
+	CloneEngine(CloneOptions options, int expectedSize) {
+		this(options, new HashMap<Object, Object>(Math.max(16, (int) (expectedSize / .75f) + 1)));
+	}
+	
+	/**
+	 * Creates the engine upon a (possibly shared) map of original -&gt; clone.
+	 */
+	CloneEngine(CloneOptions options, Map<Object, Object> originalToClone) {
+		this.propertyFilter = options.getPropertyFilter();
+		this.collectionFactory = options.getCollectionFactory();
+		this.primitiveCollections = options.isPrimitiveCollections();
+		this.originalToClone = originalToClone;
+	}
+	
+	/**
+	 * Returns the class info of the class or <code>null</code> for non JPA classes.
+	 */
+	final JpaClassInfo getClassInfo(Class<?> clazz) {
+		if (clazz == lastClass) {
+			return lastClassInfo;
+		}
+		Object info = classInfos.get(clazz);
+		if (info == null) {
+			info = JpaClassInfo.get(clazz);
+			classInfos.put(clazz, info == null ? NO_CLASS_INFO : info);
+		}
+		lastClass = clazz;
+		lastClassInfo = info instanceof JpaClassInfo ? (JpaClassInfo) info : null;
+		return lastClassInfo;
+	}
+	
+	/**
+	 * Enables the recycling of previous clones: a previous clone equal to an original is reused. In the refresh
+	 * mode only changed basic properties and relations are written. In the overwrite mode all basic properties 
+	 * are copied and changed collections are refilled in place (i.e. collection objects are recycled as well).
+	 * 
+	 * @param previousClones
+	 *            previous clones keyed by themselves
+	 * @param overwrite
+	 *            the overwrite mode
+	 */
+	void setPreviousClones(Map<Object, Object> previousClones, boolean overwrite) {
+		this.previousClones = previousClones;
+		this.overwrite = overwrite;
+	}
+	
+	/**
+	 * Restricts basic properties of projected originals.
+	 */
+	void setProjections(Map<Object, Set<String>> projections) {
+		this.projections = projections;
+	}
+	
+	/**
+	 * Creates the clone of an explored entity (without relations).
+	 */
+	void create(Object original) {
+		getClone(original, getClassInfo(original.getClass()));
+	}
+	
+	/**
+	 * Clones an explored entity and its explored relations.
+	 * 
+	 * @param original
+	 *            the explored entity
+	 * @param relations
+	 *            explored relations (and requested lazy properties) of the entity
+	 */
+	void add(Object original, Set<String> relations) {
+		JpaClassInfo classInfo = getClassInfo(original.getClass());
+		Object clone = getClone(original, classInfo);
+		for (String relation : relations) {
+			JpaPropertyInfo propertyInfo = classInfo.getPropertyInfo(relation);
+			Object originalValue = propertyInfo.getValue(original);
+			if (propertyInfo.isBasic()) {
+				// copy the requested lazy property
+				if (previousClones == null || !isEqual(originalValue, propertyInfo.getValue(clone))) {
+					propertyInfo.setValue(clone, originalValue);
+				}
+			} else if (propertyInfo.isSingular()) {
+				// clone @ManyToOne, @OneToOne, @Embedded, @EmbeddedId
+				Object clonedValue = getClone(originalValue);
+				if (previousClones == null || propertyInfo.getValue(clone) != clonedValue) {
+					propertyInfo.setValue(clone, clonedValue);
+				}
+			} else if (originalValue != null) {
+				// clone @OneToMany, @ManyToMany, @ElementCollection in the end
+				pendingCollections.add(new PendingCollection(clone, propertyInfo, originalValue));
+			} else if (previousClones != null && propertyInfo.getValue(clone) != null) {
+				propertyInfo.setValue(clone, null);
+			}
+		}
+	}
+	
+	/**
+	 * Copies basic properties of an original into its (existing) clone again, e.g. after the projection was widened.
+	 */
+	void copyBasicProperties(Object original) {
+		JpaClassInfo classInfo = getClassInfo(original.getClass());
+		Object clone = getClone(original, classInfo);
+		JpaCloner.copyBasicProperties(original, clone, classInfo, getBaseProperties(original, classInfo), propertyFilter);
+	}
+	
+	/**
+	 * Wires collections and returns the map of original -&gt; clone.
+	 */
+	Map<Object, Object> finish() {
+		for (PendingCollection pending : pendingCollections) {
+			JpaPropertyInfo propertyInfo = pending.propertyInfo;
+			Object previousValue = previousClones == null ? null : propertyInfo.getValue(pending.clone);
+			Object clonedValue;
+			if (propertyInfo.isBasicCollection()) {
+				Object originalValue = pending.originalValue;
+				if (previousValue != null && (previousValue.equals(originalValue) || (overwrite && refillBasic(originalValue, previousValue)))) {
+					clonedValue = previousValue;
+				} else {
+					clonedValue = copyBasicCollection(propertyInfo, originalValue);
+				}
+			} else {
+				clonedValue = cloneCollection(pending.originalValue, previousValue);
+			}
+			if (clonedValue != previousValue) {
+				propertyInfo.setValue(pending.clone, clonedValue);
+			}
+		}
+		pendingCollections.clear();
+		return originalToClone;
+	}
+	
+	/**
+	 * Returns the clone of a JPA object (created on demand) or the passed object if it is not a JPA object.
+	 */
+	private Object getClone(Object original) {
+		if (original == null) {
+			return null;
+		}
+		JpaClassInfo classInfo = getClassInfo(original.getClass());
+		return classInfo == null ? original : getClone(original, classInfo);
+	}
+	
+	private Object getClone(Object original, JpaClassInfo classInfo) {
+		Object clone = originalToClone.get(original);
+		if (clone == null && previousClones != null) {
+			clone = previousClones.get(original);
+			if (clone != null && getClassInfo(clone.getClass()) == classInfo) {
+				if (overwrite) {
+					JpaCloner.copyBasicProperties(original, clone, classInfo, getBaseProperties(original, classInfo), propertyFilter);
+				} else {
+					refreshBasicProperties(original, clone, classInfo);
+				}
+				originalToClone.put(original, clone);
+				return clone;
+			}
+			clone = null;
+		}
+		if (clone == null) {
+			try {
+				clone = classInfo.getConstructor().newInstance();
+			} catch (Exception e) {
+				throw new IllegalStateException("Unable to clone: " + original, e);
+			}
+			// copy basic properties
+			JpaCloner.copyBasicProperties(original, clone, classInfo, getBaseProperties(original, classInfo), propertyFilter);
+			// put in the cache
+			originalToClone.put(original, clone);
+		}
+		return clone;
+	}
+	
+	private List<String> getBaseProperties(Object original, JpaClassInfo classInfo) {
+		Set<String> projection = projections.get(original);
+		return projection == null ? classInfo.getEagerBaseProperties() : classInfo.getBaseProperties(projection);
+	}
+	
+	/**
+	 * Writes changed basic properties of a recycled clone, nothing is written if versions are equal.
+	 */
+	private void refreshBasicProperties(Object original, Object clone, JpaClassInfo classInfo) {
+		String versionProperty = classInfo.getVersionProperty();
+		if (versionProperty != null && classInfo.test(propertyFilter, original, versionProperty)) {
+			JpaPropertyInfo versionInfo = classInfo.getPropertyInfo(versionProperty);
+			Object version = versionInfo.getValue(original);
+			if (version != null && version.equals(versionInfo.getValue(clone))) {
+				return;
+			}
+		}
+		for (String property : getBaseProperties(original, classInfo)) {
+			if (classInfo.test(propertyFilter, original, property)) {
+				JpaPropertyInfo propertyInfo = classInfo.getPropertyInfo(property);
+				Object value = propertyInfo.getValue(original);
+				if (!isEqual(value, propertyInfo.getValue(clone))) {
+					propertyInfo.setValue(clone, value);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Null safe equals, arrays are compared by content.
+	 */
+	static boolean isEqual(Object a, Object b) {
+		if (a == b) {
+			return true;
+		}
+		if (a == null || b == null) {
+			return false;
+		}
+		if (a.getClass().isArray()) {
+			return Arrays.deepEquals(new Object[] { a }, new Object[] { b });
+		}
+		return a.equals(b);
+	}
+	
+	/**
+	 * Returns the clone of a collection relation, the previous value is returned if it has the same (identical) elements.
+	 */
+	@SuppressWarnings("rawtypes")
+	private Object cloneCollection(Object originalValue, Object previousValue) {
+		if (originalValue instanceof Collection) {
+			Collection originalCollection = (Collection) originalValue;
+			Object[] elements = new Object[originalCollection.size()];
+			int i = 0;
+			for (Object o : originalCollection) {
+				elements[i++] = getClone(o);
+			}
+			if (previousValue != null && (hasElements(originalCollection, previousValue, elements) 
+					|| (overwrite && refill(originalCollection, previousValue, elements)))) {
+				return previousValue;
+			}
+			return collectionFactory.newCollection(originalCollection, elements);
+		} else if (originalValue instanceof Map) {
+			Map<?, ?> originalMap = (Map) originalValue;
+			Object[] keys = new Object[originalMap.size()];
+			Object[] values = new Object[keys.length];
+			int i = 0;
+			for (Entry<?, ?> e : originalMap.entrySet()) {
+				keys[i] = getClone(e.getKey());
+				values[i] = getClone(e.getValue());
+				i++;
+			}
+			if (previousValue != null && (hasEntries(originalMap, previousValue, keys, values) 
+					|| (overwrite && refillMap(originalMap, previousValue, keys, values)))) {
+				return previousValue;
+			}
+			return collectionFactory.newMap(originalMap, keys, values);
+		}
+		throw new IllegalStateException("Unsupported collection type: " + originalValue.getClass());
+	}
+	
+	/**
+	 * Returns <code>true</code> if the previous collection has the same type and the same (identical) elements.
+	 */
+	@SuppressWarnings("rawtypes")
+	private static boolean hasElements(Collection original, Object previousValue, Object[] elements) {
+		if (!(previousValue instanceof Collection) || ((Collection) previousValue).size() != elements.length) {
+			return false;
+		}
+		if (original instanceof List) {
+			if (!(previousValue instanceof List)) {
+				return false;
+			}
+			int i = 0;
+			for (Object o : (List) previousValue) {
+				if (o != elements[i++]) {
+					return false;
+				}
+			}
+			return true;
+		}
+		if (!(previousValue instanceof Set) || (original instanceof SortedSet && !(previousValue instanceof SortedSet))) {
+			return false;
+		}
+		// recycled clones are matched by equals
+		Set previousSet = (Set) previousValue;
+		for (Object element : elements) {
+			if (!previousSet.contains(element)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns <code>true</code> if the previous map has the same type and the same (identical) entries.
+	 */
+	@SuppressWarnings("rawtypes")
+	private static boolean hasEntries(Map original, Object previousValue, Object[] keys, Object[] values) {
+		if (!(previousValue instanceof Map) || ((Map) previousValue).size() != keys.length) {
+			return false;
+		}
+		if (original instanceof SortedMap && !(previousValue instanceof SortedMap)) {
+			return false;
+		}
+		Map previousMap = (Map) previousValue;
+		for (int i = 0; i < keys.length; i++) {
+			Object value = previousMap.get(keys[i]);
+			if (value != values[i] || (value == null && !previousMap.containsKey(keys[i]))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Refills the previous collection of basic values in place.
+	 */
+	@SuppressWarnings("rawtypes")
+	private static boolean refillBasic(Object original, Object previousValue) {
+		if (original instanceof Map) {
+			Map originalMap = (Map) original;
+			return refillMap(originalMap, previousValue, originalMap.keySet().toArray(), originalMap.values().toArray());
+		}
+		return refill((Collection) original, previousValue, ((Collection) original).toArray());
+	}
+	
+	/**
+	 * Refills the previous collection in place, returns <code>false</code> if the previous collection has 
+	 * an incompatible type or is unmodifiable.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static boolean refill(Collection original, Object previousValue, Object[] elements) {
+		if (!(previousValue instanceof Collection) || previousValue instanceof PrimitiveList || previousValue instanceof PrimitiveSet) {
+			return false;
+		}
+		if ((original instanceof List) != (previousValue instanceof List) || (original instanceof Set) != (previousValue instanceof Set)) {
+			return false;
+		}
+		if (!hasSameOrder(original, previousValue)) {
+			return false;
+		}
+		Collection previousCollection = (Collection) previousValue;
+		try {
+			previousCollection.clear();
+			Collections.addAll(previousCollection, elements);
+		} catch (UnsupportedOperationException e) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Refills the previous map in place, see {@link #refill(Collection, Object, Object[])}.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static boolean refillMap(Map original, Object previousValue, Object[] keys, Object[] values) {
+		if (!(previousValue instanceof Map) || !hasSameOrder(original, previousValue)) {
+			return false;
+		}
+		Map previousMap = (Map) previousValue;
+		try {
+			previousMap.clear();
+			for (int i = 0; i < keys.length; i++) {
+				previousMap.put(keys[i], values[i]);
+			}
+		} catch (UnsupportedOperationException e) {
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns <code>true</code> if both values are not sorted or both are sorted by the same comparator.
+	 */
+	private static boolean hasSameOrder(Object original, Object previousValue) {
+		if (original instanceof SortedSet) {
+			return previousValue instanceof SortedSet 
+					&& isEqual(((SortedSet<?>) original).comparator(), ((SortedSet<?>) previousValue).comparator());
+		}
+		if (original instanceof SortedMap) {
+			return previousValue instanceof SortedMap 
+					&& isEqual(((SortedMap<?, ?>) original).comparator(), ((SortedMap<?, ?>) previousValue).comparator());
+		}
+		return !(previousValue instanceof SortedSet) && !(previousValue instanceof SortedMap);
+	}
+	
+	/**
+	 * Copies an element collection of basic values in bulk (elements are not JPA objects i.e. there are no clones).
+	 * Collections of Integer, Long and Double values are copied into primitive collections if enabled.
+	 */
+	@SuppressWarnings("rawtypes")
+	private Object copyBasicCollection(JpaPropertyInfo propertyInfo, Object originalValue) {
+		if (originalValue instanceof Collection) {
+			Collection originalCollection = (Collection) originalValue;
+			Class<?> elementType = propertyInfo.getTargetClass();
+			if (primitiveCollections && PrimitiveArray.isSupported(elementType) && !(originalCollection instanceof SortedSet)) {
+				Object primitiveCollection = copyPrimitiveCollection(originalCollection, elementType);
+				if (primitiveCollection != null) {
+					return primitiveCollection;
+				}
+			}
+			return collectionFactory.newCollection(originalCollection, originalCollection.toArray());
+		} else if (originalValue instanceof Map) {
+			Map<?, ?> originalMap = (Map) originalValue;
+			Object[] keys = new Object[originalMap.size()];
+			Object[] values = new Object[keys.length];
+			int i = 0;
+			for (Entry<?, ?> e : originalMap.entrySet()) {
+				keys[i] = e.getKey();
+				values[i] = e.getValue();
+				i++;
+			}
+			return collectionFactory.newMap(originalMap, keys, values);
+		}
+		throw new IllegalStateException("Unsupported collection type: " + originalValue.getClass());
+	}
+	
+	/**
+	 * Returns the primitive copy of a {@link List} or a {@link Set} or <code>null</code> if not possible (e.g. null elements).
+	 */
+	static Object copyPrimitiveCollection(Collection<?> originalCollection, Class<?> elementType) {
+		boolean isSet = originalCollection instanceof Set;
+		if (!isSet && !(originalCollection instanceof List)) {
+			return null;
+		}
+		PrimitiveArray array = PrimitiveArray.create(elementType, originalCollection.size());
+		for (Object o : originalCollection) {
+			if (!array.accepts(o)) {
+				return null;
+			}
+			array.insert(array.size, o);
+		}
+		if (isSet) {
+			array.sortDistinct();
+			array.trim();
+			return new PrimitiveSet(array);
+		}
+		array.trim();
+		return new PrimitiveList(array);
+	}
+}
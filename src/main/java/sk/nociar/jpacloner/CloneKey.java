@@ -0,0 +1,107 @@
+package sk.nociar.jpacloner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import sk.nociar.jpacloner.graphs.GraphExplorer;
+
+/**
+ * Key of a clone: the root class, the id of the root (or the root itself), the version of the root,
+ * the sorted normalized patterns and the clone options affecting the result. Used by {@link CloneCache}
+ * and {@link CloneCoalescer}.
+ * 
+ * @author Miroslav Nociar
+ */
+final class CloneKey {
+	private final Class<?> rootClass;
+	/** the id of the root or the root itself (compared by identity) */
+	private final Object id;
+	private final boolean isIdentity;
+	private final Object version;
+	private final List<String> patterns;
+	private final PropertyFilter propertyFilter;
+	private final CollectionFactory collectionFactory;
+	private final boolean primitiveCollections;
+	private final int hashCode;
+
+	private CloneKey(Class<?> rootClass, Object id, boolean isIdentity, Object version, List<String> patterns, CloneOptions options) {
+		this.rootClass = rootClass;
+		this.id = id;
+		this.isIdentity = isIdentity;
+		this.version = version;
+		this.patterns = patterns;
+		this.propertyFilter = options.getPropertyFilter();
+		this.collectionFactory = options.getCollectionFactory();
+		this.primitiveCollections = options.isPrimitiveCollections();
+		int h = rootClass.hashCode();
+		h = 31 * h + (isIdentity ? System.identityHashCode(id) : id.hashCode());
+		h = 31 * h + (version == null ? 0 : version.hashCode());
+		h = 31 * h + patterns.hashCode();
+		h = 31 * h + propertyFilter.hashCode();
+		h = 31 * h + collectionFactory.hashCode();
+		this.hashCode = 31 * h + (primitiveCollections ? 1 : 0);
+	}
+	
+	/**
+	 * Returns the key of the clone or <code>null</code> if the root is <code>null</code>, not a JPA object 
+	 * or has no id (unless the identity of the root is allowed).
+	 */
+	static CloneKey get(Object root, CloneOptions options, boolean allowIdentity, String... patterns) {
+		if (root == null) {
+			return null;
+		}
+		Class<?> rootClass = JpaClassInfo.getJpaClass(root.getClass());
+		if (rootClass == null) {
+			return null;
+		}
+		JpaClassInfo classInfo = JpaClassInfo.get(rootClass);
+		String idProperty = classInfo.getIdProperty();
+		Object id = idProperty == null ? null : classInfo.getPropertyInfo(idProperty).getValue(root);
+		if (id == null) {
+			return allowIdentity ? new CloneKey(rootClass, root, true, null, normalize(patterns), options) : null;
+		}
+		String versionProperty = classInfo.getVersionProperty();
+		Object version = versionProperty == null ? null : classInfo.getPropertyInfo(versionProperty).getValue(root);
+		return new CloneKey(rootClass, id, false, version, normalize(patterns), options);
+	}
+	
+	/**
+	 * Returns sorted normalized (i.e. parsed and optimized) patterns without duplicates.
+	 */
+	private static List<String> normalize(String... patterns) {
+		if (patterns == null || patterns.length == 0) {
+			return Collections.emptyList();
+		}
+		List<String> normalized = new ArrayList<String>(patterns.length);
+		for (String pattern : patterns) {
+			String s = GraphExplorer.get(pattern).toString();
+			if (!normalized.contains(s)) {
+				normalized.add(s);
+			}
+		}
+		Collections.sort(normalized);
+		return normalized;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof CloneKey)) {
+			return false;
+		}
+		CloneKey other = (CloneKey) obj;
+		return hashCode == other.hashCode && rootClass == other.rootClass && isIdentity == other.isIdentity
+				&& (isIdentity ? id == other.id : id.equals(other.id))
+				&& (version == null ? other.version == null : version.equals(other.version))
+				&& patterns.equals(other.patterns) && propertyFilter.equals(other.propertyFilter)
+				&& collectionFactory.equals(other.collectionFactory) && primitiveCollections == other.primitiveCollections;
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+}
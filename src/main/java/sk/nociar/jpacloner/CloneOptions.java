@@ -0,0 +1,170 @@
+package sk.nociar.jpacloner;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Options of the cloning process, see {@link JpaCloner#clone(Object, CloneOptions, String...)}. Example:<br/>
+ * <pre>
+ * CloneOptions options = new CloneOptions(PropertyFilters.getAnnotationFilter(Id.class));
+ * // clone graphs of 10000 and more entities in parallel
+ * options.setExecutor(executor);
+ * options.setParallelThreshold(10000);
+ * Company cloned = JpaCloner.clone(company, options, "department+.(boss|employees).address");
+ * </pre>
+ * The exploration of <b>detached graphs</b> can be concurrent as well, see {@link #setConcurrentExploration(boolean)}.
+ * 
+ * @author Miroslav Nociar
+ */
+public class CloneOptions {
+	
+	private static final int DEFAULT_PARALLEL_THRESHOLD = 10000;
+	
+	private static final int DEFAULT_SPLIT_THRESHOLD = 1000;
+	
+	private PropertyFilter propertyFilter = PropertyFilters.getDefaultFilter();
+	
+	private CollectionFactory collectionFactory = CollectionFactories.getDefaultFactory();
+	
+	private boolean primitiveCollections = false;
+	
+	private ExecutorService executor = null;
+	
+	private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+	
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	
+	private boolean concurrentExploration = false;
+	
+	private int splitThreshold = DEFAULT_SPLIT_THRESHOLD;
+	
+	private boolean recordingParents = false;
+
+	/**
+	 * Creates default options i.e. all basic properties are copied, no parallel cloning.
+	 */
+	public CloneOptions() {
+	}
+
+	public CloneOptions(PropertyFilter propertyFilter) {
+		setPropertyFilter(propertyFilter);
+	}
+
+	public PropertyFilter getPropertyFilter() {
+		return propertyFilter;
+	}
+
+	/**
+	 * Sets the property filter controlling the cloning of <b>basic properties</b> and the exploring of relations.
+	 */
+	public void setPropertyFilter(PropertyFilter propertyFilter) {
+		if (propertyFilter == null) {
+			throw new NullPointerException();
+		}
+		this.propertyFilter = propertyFilter;
+	}
+
+	public CollectionFactory getCollectionFactory() {
+		return collectionFactory;
+	}
+
+	/**
+	 * Sets the factory of cloned collections, see {@link CollectionFactories}.
+	 */
+	public void setCollectionFactory(CollectionFactory collectionFactory) {
+		if (collectionFactory == null) {
+			throw new NullPointerException();
+		}
+		this.collectionFactory = collectionFactory;
+	}
+
+	public boolean isPrimitiveCollections() {
+		return primitiveCollections;
+	}
+
+	/**
+	 * Enables primitive array backed lists and sets for element collections of Integer, Long and Double values.
+	 * Primitive sets are iterated in the ascending order, primitive collections do not support <code>null</code>.
+	 */
+	public void setPrimitiveCollections(boolean primitiveCollections) {
+		this.primitiveCollections = primitiveCollections;
+	}
+
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Sets the executor of the parallel cloning, <code>null</code> disables the parallel cloning.
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	public int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	/**
+	 * Sets the minimal number of explored entities for the parallel cloning. 
+	 */
+	public void setParallelThreshold(int parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the number of partitions of the parallel cloning, the default is the number of processors.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+		}
+		this.parallelism = parallelism;
+	}
+	
+	public boolean isConcurrentExploration() {
+		return concurrentExploration && executor != null && parallelism > 1;
+	}
+
+	/**
+	 * Enables the concurrent exploration by the executor. Intended for <b>detached graphs</b> only (e.g. clones, 
+	 * cached data), the exploration is refused if an explored object is not loaded. The property filter must be 
+	 * thread safe.
+	 */
+	public void setConcurrentExploration(boolean concurrentExploration) {
+		this.concurrentExploration = concurrentExploration;
+	}
+
+	public int getSplitThreshold() {
+		return splitThreshold;
+	}
+
+	/**
+	 * Sets the minimal size of a frontier of the concurrent exploration which is split into chunks explored in parallel.
+	 */
+	public void setSplitThreshold(int splitThreshold) {
+		this.splitThreshold = splitThreshold;
+	}
+	
+	public boolean isRecordingParents() {
+		return recordingParents;
+	}
+
+	/**
+	 * Enables the recording of parent links i.e. the relation of a shortest path from roots to each explored object, 
+	 * see {@link JpaExploration#getParent(Object)}.
+	 */
+	public void setRecordingParents(boolean recordingParents) {
+		this.recordingParents = recordingParents;
+	}
+	
+	/**
+	 * Returns <code>true</code> if entities should be cloned in parallel.
+	 */
+	boolean isParallel(int size) {
+		return executor != null && size >= parallelThreshold && parallelism > 1;
+	}
+}
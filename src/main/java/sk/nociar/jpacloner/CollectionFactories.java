@@ -0,0 +1,303 @@
+package sk.nociar.jpacloner;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Factory of various {@link CollectionFactory}s. Example:<br/>
+ * <pre>
+ * CloneOptions options = new CloneOptions();
+ * options.setCollectionFactory(CollectionFactories.getCompactFactory());
+ * Company snapshot = JpaCloner.clone(company, options, "department+.(boss|employees).address");
+ * </pre>
+ * 
+ * @author Miroslav Nociar
+ */
+public class CollectionFactories {
+	
+	private CollectionFactories() {
+		throw new UnsupportedOperationException();
+	}
+	
+	/**
+	 * Default collection factory.
+	 */
+	private static final CollectionFactory defaultFactory = new CollectionFactory() {
+		@Override
+		public Collection<Object> newCollection(Collection<?> original, Object[] elements) {
+			if (original instanceof SortedSet) {
+				return newSortedSet(((SortedSet<?>) original).comparator(), elements);
+			} else if (original instanceof Set) {
+				Set<Object> set = new LinkedHashSet<Object>(capacity(elements.length));
+				Collections.addAll(set, elements);
+				return set;
+			} else if (original instanceof List) {
+				return new ArrayList<Object>(Arrays.asList(elements));
+			}
+			throw new IllegalStateException("Unsupported collection type: " + original.getClass());
+		}
+
+		@Override
+		public Map<Object, Object> newMap(Map<?, ?> original, Object[] keys, Object[] values) {
+			if (original instanceof SortedMap) {
+				return newSortedMap(((SortedMap<?, ?>) original).comparator(), keys, values);
+			}
+			Map<Object, Object> map = new LinkedHashMap<Object, Object>(capacity(keys.length));
+			for (int i = 0; i < keys.length; i++) {
+				map.put(keys[i], values[i]);
+			}
+			return map;
+		}
+	};
+	
+	/**
+	 * Compact collection factory.
+	 */
+	private static final CollectionFactory compactFactory = new CollectionFactory() {
+		@Override
+		public Collection<Object> newCollection(Collection<?> original, Object[] elements) {
+			if (original instanceof SortedSet) {
+				return Collections.unmodifiableSortedSet(newSortedSet(((SortedSet<?>) original).comparator(), elements));
+			} else if (original instanceof Set) {
+				return elements.length == 0 ? Collections.emptySet() : new CompactSet(elements);
+			} else if (original instanceof List) {
+				return elements.length == 0 ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(elements));
+			}
+			throw new IllegalStateException("Unsupported collection type: " + original.getClass());
+		}
+
+		@Override
+		public Map<Object, Object> newMap(Map<?, ?> original, Object[] keys, Object[] values) {
+			if (original instanceof SortedMap) {
+				return Collections.unmodifiableSortedMap(newSortedMap(((SortedMap<?, ?>) original).comparator(), keys, values));
+			}
+			return keys.length == 0 ? Collections.emptyMap() : new CompactMap(keys, values);
+		}
+	};
+	
+	/**
+	 * Returns the default collection factory. Cloned relations are standard java.util classes:<br/>
+	 * {@link Set}-&gt;{@link LinkedHashSet}<br/>
+	 * {@link Map}-&gt;{@link LinkedHashMap}<br/>
+	 * {@link List}-&gt;{@link ArrayList}<br/>
+	 * {@link SortedSet}-&gt;{@link TreeSet}<br/>
+	 * {@link SortedMap}-&gt;{@link TreeMap}<br/>
+	 * Collections are presized (lists have no spare capacity), sorted collections are built in linear time 
+	 * if cloned elements keep the order of original elements.
+	 */
+	public static CollectionFactory getDefaultFactory() {
+		return defaultFactory;
+	}
+
+	/**
+	 * Returns the factory of compact <b>unmodifiable</b> collections for read-only snapshots. Lists are backed 
+	 * by arrays, sets and maps are backed by arrays with an open addressing index, iteration order is preserved.
+	 * Sorted collections are unmodifiable views of {@link TreeSet} and {@link TreeMap}.
+	 */
+	public static CollectionFactory getCompactFactory() {
+		return compactFactory;
+	}
+	
+	private static int capacity(int size) {
+		return Math.max(16, (int) (size / .75f) + 1);
+	}
+	
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static boolean isSorted(Comparator comparator, Object[] elements) {
+		for (int i = 1; i < elements.length; i++) {
+			Object a = elements[i - 1];
+			Object b = elements[i];
+			if (a == null || b == null) {
+				return false;
+			}
+			int cmp = comparator == null ? ((Comparable) a).compareTo(b) : comparator.compare(a, b);
+			if (cmp >= 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Creates a {@link TreeSet}, in linear time if elements are sorted.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static TreeSet<Object> newSortedSet(Comparator comparator, Object[] elements) {
+		TreeSet<Object> set = new TreeSet<Object>(comparator);
+		if (isSorted(comparator, elements)) {
+			// TreeSet#addAll(SortedSet) builds the tree from the sorted sequence
+			set.addAll(new SortedArray(comparator, elements, null));
+		} else {
+			Collections.addAll(set, elements);
+		}
+		return set;
+	}
+
+	/**
+	 * Creates a {@link TreeMap}, in linear time if keys are sorted.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static TreeMap<Object, Object> newSortedMap(Comparator comparator, Object[] keys, Object[] values) {
+		TreeMap<Object, Object> map = new TreeMap<Object, Object>(comparator);
+		if (isSorted(comparator, keys)) {
+			// TreeMap#putAll(SortedMap) builds the tree from the sorted sequence
+			map.putAll(new SortedArray(comparator, keys, values).asMap());
+		} else {
+			for (int i = 0; i < keys.length; i++) {
+				map.put(keys[i], values[i]);
+			}
+		}
+		return map;
+	}
+	
+	/**
+	 * Minimal sorted view of arrays, supports only the iteration (i.e. the bulk build of a tree).
+	 */
+	@SuppressWarnings("rawtypes")
+	private static final class SortedArray extends AbstractSet<Object> implements SortedSet<Object> {
+		private final Comparator comparator;
+		private final Object[] keys;
+		private final Object[] values;
+		
+		private SortedArray(Comparator comparator, Object[] keys, Object[] values) {
+			this.comparator = comparator;
+			this.keys = keys;
+			this.values = values;
+		}
+
+		@Override
+		public Iterator<Object> iterator() {
+			return Arrays.asList(keys).iterator();
+		}
+
+		@Override
+		public int size() {
+			return keys.length;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Comparator<Object> comparator() {
+			return comparator;
+		}
+
+		@Override
+		public SortedSet<Object> subSet(Object fromElement, Object toElement) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public SortedSet<Object> headSet(Object toElement) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public SortedSet<Object> tailSet(Object fromElement) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Object first() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Object last() {
+			throw new UnsupportedOperationException();
+		}
+		
+		private SortedMap<Object, Object> asMap() {
+			return new SortedArrayMap();
+		}
+		
+		private final class SortedArrayMap extends AbstractMap<Object, Object> implements SortedMap<Object, Object> {
+			@Override
+			public Set<Entry<Object, Object>> entrySet() {
+				return new AbstractSet<Entry<Object, Object>>() {
+					@Override
+					public Iterator<Entry<Object, Object>> iterator() {
+						return new Iterator<Entry<Object, Object>>() {
+							private int i = 0;
+							
+							@Override
+							public boolean hasNext() {
+								return i < keys.length;
+							}
+
+							@Override
+							public Entry<Object, Object> next() {
+								if (i >= keys.length) {
+									throw new NoSuchElementException();
+								}
+								Entry<Object, Object> entry = new SimpleImmutableEntry<Object, Object>(keys[i], values[i]);
+								i++;
+								return entry;
+							}
+
+							@Override
+							public void remove() {
+								throw new UnsupportedOperationException();
+							}
+						};
+					}
+
+					@Override
+					public int size() {
+						return keys.length;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return keys.length;
+			}
+
+			@Override
+			public Comparator<? super Object> comparator() {
+				return SortedArray.this.comparator();
+			}
+
+			@Override
+			public SortedMap<Object, Object> subMap(Object fromKey, Object toKey) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public SortedMap<Object, Object> headMap(Object toKey) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public SortedMap<Object, Object> tailMap(Object fromKey) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public Object firstKey() {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public Object lastKey() {
+				throw new UnsupportedOperationException();
+			}
+		}
+	}
+}
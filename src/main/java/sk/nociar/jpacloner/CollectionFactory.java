@@ -0,0 +1,35 @@
+package sk.nociar.jpacloner;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Factory of cloned collection relations (*ToMany, @ElementCollection). Cloned elements are passed in the iteration 
+ * order of the original collection. For built-in factories see {@link CollectionFactories}.
+ * 
+ * @author Miroslav Nociar
+ */
+public interface CollectionFactory {
+
+	/**
+	 * Creates the clone of a {@link Collection}.
+	 * 
+	 * @param original
+	 *            the original collection (a {@link java.util.SortedSet}, a {@link java.util.Set} or a {@link java.util.List})
+	 * @param elements
+	 *            cloned elements in the iteration order of the original collection (the array can be kept)
+	 */
+	public Collection<Object> newCollection(Collection<?> original, Object[] elements);
+
+	/**
+	 * Creates the clone of a {@link Map}.
+	 * 
+	 * @param original
+	 *            the original map (a {@link java.util.SortedMap} or a {@link Map})
+	 * @param keys
+	 *            cloned keys in the iteration order of the original map (the array can be kept)
+	 * @param values
+	 *            cloned values, the value of keys[i] is values[i] (the array can be kept)
+	 */
+	public Map<Object, Object> newMap(Map<?, ?> original, Object[] keys, Object[] values);
+}
@@ -0,0 +1,122 @@
+package sk.nociar.jpacloner;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Compact unmodifiable map backed by arrays of keys and values (in the iteration order) and an open addressing 
+ * index of array positions, see {@link CompactSet} and {@link CollectionFactories#getCompactFactory()}.
+ * Duplicate keys are merged as by {@link java.util.Map#put(Object, Object)} i.e. the position of the first 
+ * occurrence and the last value are kept.
+ * 
+ * @author Miroslav Nociar
+ */
+final class CompactMap extends AbstractMap<Object, Object> {
+	
+	private final Object[] keys;
+	
+	private final Object[] values;
+	
+	private final int[] index;
+
+	CompactMap(Object[] keys, Object[] values) {
+		Object[] distinctKeys = new Object[keys.length];
+		Object[] distinctValues = new Object[keys.length];
+		int[] index = CompactSet.newIndex(keys.length);
+		int size = 0;
+		for (int i = 0; i < keys.length; i++) {
+			int position = CompactSet.put(distinctKeys, size, index, keys[i]);
+			if (position < 0) {
+				distinctValues[size++] = values[i];
+			} else {
+				distinctValues[position] = values[i];
+			}
+		}
+		if (size == keys.length) {
+			this.keys = distinctKeys;
+			this.values = distinctValues;
+			this.index = index;
+		} else {
+			this.keys = Arrays.copyOf(distinctKeys, size);
+			this.values = Arrays.copyOf(distinctValues, size);
+			this.index = CompactSet.index(this.keys);
+		}
+	}
+
+	@Override
+	public Object get(Object key) {
+		int i = CompactSet.indexOf(keys, index, key);
+		return i < 0 ? null : values[i];
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return CompactSet.indexOf(keys, index, key) >= 0;
+	}
+
+	@Override
+	public int size() {
+		return keys.length;
+	}
+
+	@Override
+	public Set<Object> keySet() {
+		return new AbstractSet<Object>() {
+			@Override
+			public boolean contains(Object o) {
+				return containsKey(o);
+			}
+
+			@Override
+			public Iterator<Object> iterator() {
+				return Arrays.asList(keys).iterator();
+			}
+
+			@Override
+			public int size() {
+				return keys.length;
+			}
+		};
+	}
+
+	@Override
+	public Set<Entry<Object, Object>> entrySet() {
+		return new AbstractSet<Entry<Object, Object>>() {
+			@Override
+			public Iterator<Entry<Object, Object>> iterator() {
+				return new Iterator<Entry<Object, Object>>() {
+					private int i = 0;
+
+					@Override
+					public boolean hasNext() {
+						return i < keys.length;
+					}
+
+					@Override
+					public Entry<Object, Object> next() {
+						if (i >= keys.length) {
+							throw new NoSuchElementException();
+						}
+						Entry<Object, Object> entry = new SimpleImmutableEntry<Object, Object>(keys[i], values[i]);
+						i++;
+						return entry;
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return keys.length;
+			}
+		};
+	}
+}
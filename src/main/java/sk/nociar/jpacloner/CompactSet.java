@@ -0,0 +1,133 @@
+package sk.nociar.jpacloner;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Compact unmodifiable set backed by an array of elements (in the iteration order) and an open addressing 
+ * index of array positions. Small sets have no index (linear scan), see {@link CollectionFactories#getCompactFactory()}.
+ * Duplicate elements (e.g. clones which became equal) are removed, the first occurrence is kept.
+ * 
+ * @author Miroslav Nociar
+ */
+final class CompactSet extends AbstractSet<Object> {
+	
+	/**
+	 * Maximum size of sets without the index.
+	 */
+	static final int MAX_LINEAR_SIZE = 8;
+	
+	private final Object[] elements;
+	
+	private final int[] index;
+
+	CompactSet(Object[] elements) {
+		Object[] distinct = new Object[elements.length];
+		int[] index = newIndex(elements.length);
+		int size = 0;
+		for (Object element : elements) {
+			if (put(distinct, size, index, element) < 0) {
+				size++;
+			}
+		}
+		if (size == elements.length) {
+			this.elements = distinct;
+			this.index = index;
+		} else {
+			this.elements = Arrays.copyOf(distinct, size);
+			this.index = index(this.elements);
+		}
+	}
+	
+	/**
+	 * Creates an empty index for the passed number of keys or <code>null</code> for small arrays.
+	 */
+	static int[] newIndex(int size) {
+		return size <= MAX_LINEAR_SIZE ? null : new int[Integer.highestOneBit(size - 1) << 2];
+	}
+	
+	/**
+	 * Creates the index of array positions (position + 1, zero means an empty slot) or <code>null</code> for small arrays.
+	 * Keys must be distinct.
+	 */
+	static int[] index(Object[] keys) {
+		int[] index = newIndex(keys.length);
+		for (int i = 0; i < keys.length; i++) {
+			put(keys, i, index, keys[i]);
+		}
+		return index;
+	}
+	
+	/**
+	 * Returns the position of the key among the first <code>size</code> keys, or adds the key at the position 
+	 * <code>size</code> (and to the index) and returns -1.
+	 */
+	static int put(Object[] keys, int size, int[] index, Object key) {
+		if (index == null) {
+			for (int i = 0; i < size; i++) {
+				if (key == null ? keys[i] == null : key.equals(keys[i])) {
+					return i;
+				}
+			}
+			keys[size] = key;
+			return -1;
+		}
+		int mask = index.length - 1;
+		int slot = hash(key) & mask;
+		for (; index[slot] != 0; slot = (slot + 1) & mask) {
+			Object k = keys[index[slot] - 1];
+			if (key == null ? k == null : key.equals(k)) {
+				return index[slot] - 1;
+			}
+		}
+		keys[size] = key;
+		index[slot] = size + 1;
+		return -1;
+	}
+	
+	/**
+	 * Returns the array position of the key or -1.
+	 */
+	static int indexOf(Object[] keys, int[] index, Object key) {
+		if (index == null) {
+			for (int i = 0; i < keys.length; i++) {
+				if (key == null ? keys[i] == null : key.equals(keys[i])) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		int mask = index.length - 1;
+		for (int slot = hash(key) & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+			Object k = keys[index[slot] - 1];
+			if (key == null ? k == null : key.equals(k)) {
+				return index[slot] - 1;
+			}
+		}
+		return -1;
+	}
+	
+	private static int hash(Object key) {
+		if (key == null) {
+			return 0;
+		}
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+	
+	@Override
+	public boolean contains(Object o) {
+		return indexOf(elements, index, o) >= 0;
+	}
+
+	@Override
+	public Iterator<Object> iterator() {
+		return Arrays.asList(elements).iterator();
+	}
+
+	@Override
+	public int size() {
+		return elements.length;
+	}
+}
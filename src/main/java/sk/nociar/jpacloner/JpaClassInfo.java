@@ -2,6 +2,7 @@ package sk.nociar.jpacloner;
 
 import static java.util.Collections.unmodifiableList;
 
+import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
@@ -11,6 +12,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -22,7 +24,9 @@ import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.ManyToMany;
 import javax.persistence.OneToMany;
+import javax.persistence.Version;
 
+import sk.nociar.jpacloner.graphs.WildcardPattern;
 import sk.nociar.jpacloner.properties.FieldPropertyReader;
 import sk.nociar.jpacloner.properties.FieldPropertyWriter;
 import sk.nociar.jpacloner.properties.MethodPropertyReader;
@@ -45,10 +49,46 @@ public class JpaClassInfo {
 	/** Holds all JPA properties (basic and relations) */
 	private final Map<String, JpaPropertyInfo> jpaProperties = new HashMap<String, JpaPropertyInfo>();
 	private final List<String> baseProperties;
+	private final List<String> eagerBaseProperties;
+	private final List<String> lazyProperties;
 	private final List<String> relations;
+	private final String idProperty;
+	private final String versionProperty;
+	/** The raw JPA class */
+	private final Class<?> jpaClass;
+	/** Indices of all JPA properties */
+	private final Map<String, Integer> propertyIndices = new HashMap<String, Integer>();
+	/** Bitmasks of class property filters over property indices */
+	private final ConcurrentMap<ClassPropertyFilter, FilterMask> filterMasks = new ConcurrentHashMap<ClassPropertyFilter, FilterMask>();
+	/** Resolved projections of basic properties */
+	private final ConcurrentMap<Set<String>, List<String>> projections = new ConcurrentHashMap<Set<String>, List<String>>();
+	/** Relations matched by wildcard patterns */
+	private final ConcurrentMap<WildcardPattern, List<String>> wildcardMatches = new ConcurrentHashMap<WildcardPattern, List<String>>();
 	
 	private static final ConcurrentMap<Class<?>, JpaClassInfo> classInfo = new ConcurrentHashMap<Class<?>, JpaClassInfo>();
 	
+	/**
+	 * Maximum number of cached filter masks per class (prevention of leaks by filters created per call).
+	 */
+	private static final int MAX_FILTER_MASKS = 64;
+	
+	/**
+	 * Maximum number of cached wildcard matches per class (prevention of leaks by patterns created per call).
+	 */
+	private static final int MAX_WILDCARD_MATCHES = 64;
+	
+	/**
+	 * Bitmask of a class property filter, the flag marks a recent use (the second chance eviction).
+	 */
+	private static final class FilterMask {
+		private final long[] bits;
+		private volatile boolean used = true;
+
+		private FilterMask(long[] bits) {
+			this.bits = bits;
+		}
+	}
+	
 	public static JpaClassInfo get(Class<?> clazz) {
 		clazz = getJpaClass(clazz);
 		if (clazz == null) {
@@ -78,6 +118,7 @@ public class JpaClassInfo {
 
 
 	private JpaClassInfo(final Class<?> clazz) {
+		jpaClass = clazz;
 		// find default constructor
 		try {
 			constructor = clazz.getDeclaredConstructor();
@@ -157,14 +198,26 @@ public class JpaClassInfo {
 		}
 		// find all properties end relations
 		List<String> properties = new ArrayList<String>();
+		List<String> eagerProperties = new ArrayList<String>();
+		List<String> lazyProperties = new ArrayList<String>();
 		LinkedList<String> relations = new LinkedList<String>();
+		String idProperty = null;
+		String versionProperty = null;
 		
 		for (Map.Entry<String, JpaPropertyInfo> entry : jpaProperties.entrySet()) {
 			final String propertyName = entry.getKey();
 			final JpaPropertyInfo propertyInfo = entry.getValue();
+			final AccessibleObject accessibleObject = propertyInfo.getAccessibleObject();
 			
+			if (accessibleObject.getAnnotation(Id.class) != null || accessibleObject.getAnnotation(EmbeddedId.class) != null) {
+				idProperty = propertyName;
+			}
+			if (accessibleObject.getAnnotation(Version.class) != null) {
+				versionProperty = propertyName;
+			}
 			if (propertyInfo.isBasic()) {
 				properties.add(propertyName);
+				(propertyInfo.isLazy() ? lazyProperties : eagerProperties).add(propertyName);
 			} else {
 				OneToMany oneToMany = propertyInfo.getAccessibleObject().getAnnotation(OneToMany.class);
 				ManyToMany manyToMany = propertyInfo.getAccessibleObject().getAnnotation(ManyToMany.class);
@@ -178,8 +231,15 @@ public class JpaClassInfo {
 			}
 		}
 		
+		for (String propertyName : jpaProperties.keySet()) {
+			propertyIndices.put(propertyName, propertyIndices.size());
+		}
 		this.baseProperties = unmodifiableList(properties);
+		this.eagerBaseProperties = unmodifiableList(eagerProperties);
+		this.lazyProperties = unmodifiableList(lazyProperties);
 		this.relations = unmodifiableList(new ArrayList<String>(relations));
+		this.idProperty = idProperty;
+		this.versionProperty = versionProperty;
 	}
 
 	/**
@@ -227,14 +287,135 @@ public class JpaClassInfo {
 		return constructor;
 	}
 
+	/**
+	 * Returns all basic properties (including lazy ones).
+	 */
 	public List<String> getBaseProperties() {
 		return baseProperties;
 	}
 
+	/**
+	 * Returns basic properties which are not lazy i.e. basic properties cloned by default, 
+	 * see {@link JpaPropertyInfo#isLazy()}.
+	 */
+	List<String> getEagerBaseProperties() {
+		return eagerBaseProperties;
+	}
+
+	/**
+	 * Returns basic properties (including lazy ones) restricted by the projection, the {@link Id} and the 
+	 * {@link Version} are always included. The projection must not be modified.
+	 */
+	public List<String> getBaseProperties(Set<String> projection) {
+		List<String> properties = projections.get(projection);
+		if (properties == null) {
+			properties = new ArrayList<String>();
+			for (String property : baseProperties) {
+				if (projection.contains(property) || property.equals(idProperty) || property.equals(versionProperty)) {
+					properties.add(property);
+				}
+			}
+			properties = unmodifiableList(properties);
+			projections.putIfAbsent(projection, properties);
+		}
+		return properties;
+	}
+
+	/**
+	 * Returns lazy basic properties (e.g. {@link javax.persistence.Lob}), see {@link JpaPropertyInfo#isLazy()}.
+	 */
+	public List<String> getLazyProperties() {
+		return lazyProperties;
+	}
+
 	public List<String> getRelations() {
 		return relations;
 	}
 
+	/**
+	 * Returns relations matched by the wildcard pattern, matches are cached per class.
+	 */
+	List<String> getMatchedRelations(WildcardPattern pattern) {
+		List<String> matched = wildcardMatches.get(pattern);
+		if (matched == null) {
+			matched = unmodifiableList(pattern.match(relations));
+			if (wildcardMatches.size() < MAX_WILDCARD_MATCHES) {
+				wildcardMatches.putIfAbsent(pattern, matched);
+			}
+		}
+		return matched;
+	}
+
+	/**
+	 * Returns the property annotated by {@link Id} or {@link EmbeddedId} or <code>null</code> (e.g. an {@link Embeddable}).
+	 */
+	public String getIdProperty() {
+		return idProperty;
+	}
+
+	/**
+	 * Returns the property annotated by {@link Version} or <code>null</code>.
+	 */
+	public String getVersionProperty() {
+		return versionProperty;
+	}
+
+	/**
+	 * Evaluates the property filter for a property of the entity of this class. The {@link ClassPropertyFilter} 
+	 * is evaluated once for all properties of this class, the result is cached as a bitmask.
+	 */
+	boolean test(PropertyFilter filter, Object entity, String property) {
+		if (filter instanceof ClassPropertyFilter) {
+			return test((ClassPropertyFilter) filter, property);
+		}
+		return filter.test(entity, property);
+	}
+
+	boolean test(ClassPropertyFilter filter, String property) {
+		Integer index = propertyIndices.get(property);
+		if (index == null) {
+			// not a JPA property
+			return filter.test(jpaClass, property);
+		}
+		FilterMask mask = filterMasks.get(filter);
+		if (mask == null) {
+			if (filterMasks.size() >= MAX_FILTER_MASKS) {
+				// the cache is full, a mask which was not used recently is evicted
+				evictFilterMask();
+				return filter.test(jpaClass, property);
+			}
+			long[] bits = new long[(propertyIndices.size() + 63) >>> 6];
+			for (Map.Entry<String, Integer> entry : propertyIndices.entrySet()) {
+				if (filter.test(jpaClass, entry.getKey())) {
+					int i = entry.getValue();
+					bits[i >>> 6] |= 1L << i;
+				}
+			}
+			mask = new FilterMask(bits);
+			filterMasks.putIfAbsent(filter, mask);
+		} else if (!mask.used) {
+			mask.used = true;
+		}
+		int i = index;
+		return (mask.bits[i >>> 6] & (1L << i)) != 0;
+	}
+
+	/**
+	 * Evicts a filter mask which was not used since the previous eviction (i.e. an approximation of LRU).
+	 */
+	private void evictFilterMask() {
+		for (int pass = 0; pass < 2; pass++) {
+			for (Map.Entry<ClassPropertyFilter, FilterMask> entry : filterMasks.entrySet()) {
+				FilterMask mask = entry.getValue();
+				if (!mask.used) {
+					filterMasks.remove(entry.getKey(), mask);
+					return;
+				}
+				mask.used = false;
+			}
+		}
+	}
+
 	public JpaPropertyInfo getPropertyInfo(String property) {
 		return jpaProperties.get(property);
 	}
@@ -2,13 +2,13 @@ package sk.nociar.jpacloner;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
@@ -25,6 +25,8 @@ import sk.nociar.jpacloner.graphs.GraphExplorer;
  * The <b>raw class</b> means a class annotated by {@link Entity} or {@link Embeddable}, not a Hibernate proxy. 
  * String patterns define <b>included relations</b> which will be cloned. For description of patterns see the {@link GraphExplorer}.
  * Cloned entities will have all <b>basic properties</b> (non-relation properties) copied by default.
+ * Lazy basic properties ({@link javax.persistence.Lob} or {@link javax.persistence.Basic} with the lazy fetch type) 
+ * are copied only if requested explicitly by a pattern e.g. "documents.content".
  * Advanced control over the cloning process is supported via the {@link PropertyFilter} interface.
  * There are two options for cloning:<br/><br/>
  * <ol>
@@ -46,12 +48,15 @@ import sk.nociar.jpacloner.graphs.GraphExplorer;
  * Company cloned = JpaCloner.clone(company, filter, "department+.(boss|employees).address");</pre>
  * </li>
  * </ol>
+ * Large explored graphs can be cloned in parallel, see {@link CloneOptions}.<br/>
+ * <br/>
  * Cloned <b>relations</b> will be standard java.util classes:<br/>
  * {@link Set}-&gt;{@link LinkedHashSet}<br/>
  * {@link Map}-&gt;{@link LinkedHashMap}<br/>
  * {@link List}-&gt;{@link ArrayList}<br/>
  * {@link SortedSet}-&gt;{@link TreeSet}<br/>
  * {@link SortedMap}-&gt;{@link TreeMap}<br/>
+ * Other collection types can be created by a {@link CollectionFactory}, see {@link CloneOptions#setCollectionFactory(CollectionFactory)}.<br/>
  * <br/>
  * Cloning of a {@link Map} is supported via "key" and "value" properties e.g. "my.map.(key.a.b.c|value.x.y.z)".
  * Please note that the cloning has also a side effect regarding the lazy loading. 
@@ -76,121 +81,44 @@ public final class JpaCloner {
 	 * @param explorer
 	 * @return map of original -&gt; clone
 	 */
-	@SuppressWarnings({ "rawtypes", "unchecked" })
-	private static Map<Object, Object> clone(JpaExplorer explorer, PropertyFilter propertyFilter) {
-		Map<Object, Object> originalToClone = new HashMap<Object, Object>(explorer.entities.size());
-		// clone each explored JPA entity
-		for (Object original : explorer.entities.keySet()) {
-			JpaClassInfo classInfo = JpaClassInfo.get(original.getClass());
-			Object clone;
-			try {
-				clone = classInfo.getConstructor().newInstance();
-			} catch (Exception e) {
-				throw new IllegalStateException("Unable to clone: " + original, e);
-			}
-			// copy basic properties
-			copyBasicProperties(original, clone, classInfo, propertyFilter);
-			// put in the cache
-			originalToClone.put(original, clone);
+	private static Map<Object, Object> clone(JpaExplorer explorer, CloneOptions options) {
+		return clone(explorer.entities, explorer.projections, options);
+	}
+	
+	/**
+	 * Clones explored entities (with explored relations) restricted by projections, returns the map of original -&gt; clone.
+	 */
+	static Map<Object, Object> clone(Map<Object, Set<String>> entities, Map<Object, Set<String>> projections, CloneOptions options) {
+		if (options.isParallel(entities.size())) {
+			return ParallelCloneEngine.clone(entities, projections, options);
 		}
-		// clone @ManyToOne, @OneToOne, @Embedded, @EmbeddedId
-		for (Map.Entry<Object, Set<String>> entry : explorer.entities.entrySet()) {
-			Object original = entry.getKey();
-			Set<String> relations = entry.getValue();
-			Object clone = originalToClone.get(original);
-			JpaClassInfo classInfo = JpaClassInfo.get(original.getClass());
-			for (String relation : relations) {
-				JpaPropertyInfo propertyInfo = classInfo.getPropertyInfo(relation);
-				if (propertyInfo.isSingular()) {
-					Object originalValue = propertyInfo.getValue(original);
-					Object clonedValue = originalToClone.get(originalValue);
-					propertyInfo.setValue(clone, clonedValue);
-				}
-			}
+		CloneEngine engine = new CloneEngine(options, entities.size());
+		engine.setProjections(projections);
+		for (Map.Entry<Object, Set<String>> entry : entities.entrySet()) {
+			engine.add(entry.getKey(), entry.getValue());
 		}
-		// clone @OneToMany, @ManyToMany, @ElementCollection
-		for (Map.Entry<Object, Set<String>> entry : explorer.entities.entrySet()) {
-			Object original = entry.getKey();
-			Set<String> relations = entry.getValue();
-			Object clone = originalToClone.get(original);
-			JpaClassInfo classInfo = JpaClassInfo.get(original.getClass());
-			for (String relation : relations) {
-				JpaPropertyInfo propertyInfo = classInfo.getPropertyInfo(relation);
-				if (propertyInfo.isSingular()) {
-					continue;
-				}
-				Object originalValue = propertyInfo.getValue(original);
-				if (originalValue instanceof Collection) {
-					Collection originalCollection = (Collection) originalValue;
-					Collection clonedCollection;
-					if (originalCollection instanceof SortedSet) {
-						// TreeSet with the same Comparator (can be null)
-						clonedCollection = new TreeSet(((SortedSet) originalValue).comparator());
-					} else if (originalCollection instanceof Set) {
-						// HashSet
-						clonedCollection = new LinkedHashSet(originalCollection.size());
-					} else if (originalCollection instanceof List) {
-						// ArrayList
-						clonedCollection = new ArrayList(originalCollection.size());
-					} else {
-						throw new IllegalStateException("Unsupported collection type: " + originalValue.getClass());
-					}
-					for (Object o : originalCollection) {
-						Object c = originalToClone.get(o);
-						if (c == null) {
-							c = o;
-						}
-						clonedCollection.add(c);
-					}
-					propertyInfo.setValue(clone, clonedCollection);
-				} else if (originalValue instanceof Map) {
-					Map originalMap = (Map) originalValue;
-					Map clonedMap;
-					if (originalMap instanceof SortedMap) {
-						clonedMap = new TreeMap(((SortedMap) originalValue).comparator());
-					} else {
-						clonedMap = new LinkedHashMap(originalMap.size());
-					}
-					for (Object o : originalMap.entrySet()) {
-						Entry e = (Entry) o;
-						Object key = e.getKey();
-						Object value = e.getValue();
-						Object key2 = originalToClone.get(key);
-						Object value2 = originalToClone.get(value);
-						if (key2 == null) {
-							key2 = key;
-						}
-						if (value2 == null) {
-							value2 = value;
-						}
-						clonedMap.put(key2, value2);
-					}
-					propertyInfo.setValue(clone, clonedMap);
-				}
-			}
-		}
-		return originalToClone;
+		return engine.finish();
 	}
 	
 	/**
-	 * Clones the passed JPA entity. The property filter controls the cloning of <b>basic properties</b>.
+	 * Clones the passed JPA entity with the passed options.
 	 * The cloned relations are specified by string patters. For description of patterns see the {@link GraphExplorer}.
 	 */
 	@SuppressWarnings("unchecked")
-	public static <T> T clone(T root, PropertyFilter propertyFilter, String... patterns) {
-		JpaExplorer explorer = JpaExplorer.doExplore(root, propertyFilter, patterns);
-		return (T) clone(explorer, propertyFilter).get(root);
+	public static <T> T clone(T root, CloneOptions options, String... patterns) {
+		JpaExplorer explorer = JpaExplorer.doExplore(Collections.singleton(root), options, patterns);
+		return (T) clone(explorer, options).get(root);
 	}
 
 	/**
-	 * Clones the list of JPA entities. The property filter controls the cloning of <b>basic properties</b>.
+	 * Clones the list of JPA entities with the passed options.
 	 * The cloned relations are specified by string patters. For description of patterns see the {@link GraphExplorer}.
 	 */
 	@SuppressWarnings("unchecked")
-	public static <T> List<T> clone(Collection<T> list, PropertyFilter propertyFilter, String... patterns) {
+	public static <T> List<T> clone(Collection<T> list, CloneOptions options, String... patterns) {
 		List<T> clonedList = new ArrayList<T>(list.size());
-		JpaExplorer explorer = JpaExplorer.doExplore(list, propertyFilter, patterns);
-		Map<Object, Object> originalToClone = clone(explorer, propertyFilter);
+		JpaExplorer explorer = JpaExplorer.doExplore(list, options, patterns);
+		Map<Object, Object> originalToClone = clone(explorer, options);
 		for (T original : list) {
 			clonedList.add((T) originalToClone.get(original));
 		}
@@ -198,20 +126,44 @@ public final class JpaCloner {
 	}
 
 	/**
-	 * Clones the set of JPA entities. The property filter controls the cloning of <b>basic properties</b>.
+	 * Clones the set of JPA entities with the passed options.
 	 * The cloned relations are specified by string patters. For description of patterns see the {@link GraphExplorer}.
 	 */
 	@SuppressWarnings("unchecked")
-	public static <T> Set<T> clone(Set<T> set, PropertyFilter propertyFilter, String... patterns) {
+	public static <T> Set<T> clone(Set<T> set, CloneOptions options, String... patterns) {
 		Set<T> clonedSet = new HashSet<T>();
-		JpaExplorer explorer = JpaExplorer.doExplore(set, propertyFilter, patterns);
-		Map<Object, Object> originalToClone = clone(explorer, propertyFilter);
+		JpaExplorer explorer = JpaExplorer.doExplore(set, options, patterns);
+		Map<Object, Object> originalToClone = clone(explorer, options);
 		for (T original : set) {
 			clonedSet.add((T) originalToClone.get(original));
 		}
 		return clonedSet;
 	}
 
+	/**
+	 * Clones the passed JPA entity. The property filter controls the cloning of <b>basic properties</b>.
+	 * The cloned relations are specified by string patters. For description of patterns see the {@link GraphExplorer}.
+	 */
+	public static <T> T clone(T root, PropertyFilter propertyFilter, String... patterns) {
+		return clone(root, new CloneOptions(propertyFilter), patterns);
+	}
+
+	/**
+	 * Clones the list of JPA entities. The property filter controls the cloning of <b>basic properties</b>.
+	 * The cloned relations are specified by string patters. For description of patterns see the {@link GraphExplorer}.
+	 */
+	public static <T> List<T> clone(Collection<T> list, PropertyFilter propertyFilter, String... patterns) {
+		return clone(list, new CloneOptions(propertyFilter), patterns);
+	}
+
+	/**
+	 * Clones the set of JPA entities. The property filter controls the cloning of <b>basic properties</b>.
+	 * The cloned relations are specified by string patters. For description of patterns see the {@link GraphExplorer}.
+	 */
+	public static <T> Set<T> clone(Set<T> set, PropertyFilter propertyFilter, String... patterns) {
+		return clone(set, new CloneOptions(propertyFilter), patterns);
+	}
+
 	/**
 	 * Clones the passed JPA entity. Each entity has <b>all basic properties</b> cloned. 
 	 * The cloned relations are specified by string patters. For description of patterns see the {@link GraphExplorer}.
@@ -236,12 +188,102 @@ public final class JpaCloner {
 		return clone(set, PropertyFilters.getDefaultFilter(), patterns);
 	}
 
+	/**
+	 * Refreshes the previous clone of the JPA entity. Clone instances of the previous graph are reused (matched by equals), 
+	 * basic properties are compared with the originals ({@link javax.persistence.Version} first) and only changed 
+	 * properties and relations are written. Entities which disappeared from the graph are dropped, new entities are cloned.
+	 * The previous clone should be cloned with the same patterns. Returns the refreshed clone (a new instance 
+	 * if the previous clone is <code>null</code> or not equal to the root).
+	 * For description of patterns see the {@link GraphExplorer}.
+	 */
+	public static <T> T refresh(T previousClone, T root, String... patterns) {
+		return refresh(previousClone, root, new CloneOptions(), patterns);
+	}
+
+	/**
+	 * Refreshes the previous clone of the JPA entity with the passed options, see {@link #refresh(Object, Object, String...)}.
+	 * The refresh is not parallel. For description of patterns see the {@link GraphExplorer}.
+	 */
+	public static <T> T refresh(T previousClone, T root, CloneOptions options, String... patterns) {
+		return recycle(root, previousClone, false, options, patterns);
+	}
+
+	/**
+	 * Clones the JPA entity into the previous clone graph. Clone instances and collection objects of the previous 
+	 * graph are recycled (matched by equals i.e. by identifiers) and overwritten, only unmatched entities are 
+	 * instantiated. Collections are refilled in place unless they are unmodifiable or of an incompatible type.
+	 * The previous clone should be cloned with the same patterns. Returns the clone (the previous clone if it is 
+	 * equal to the root). For description of patterns see the {@link GraphExplorer}.
+	 */
+	public static <T> T cloneInto(T root, T previousClone, String... patterns) {
+		return cloneInto(root, previousClone, new CloneOptions(), patterns);
+	}
+
+	/**
+	 * Clones the JPA entity into the previous clone graph with the passed options, see 
+	 * {@link #cloneInto(Object, Object, String...)}. The cloning is not parallel. 
+	 * For description of patterns see the {@link GraphExplorer}.
+	 */
+	public static <T> T cloneInto(T root, T previousClone, CloneOptions options, String... patterns) {
+		return recycle(root, previousClone, true, options, patterns);
+	}
+	
+	/**
+	 * Clones the root with recycled instances of the previous clone graph.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T recycle(T root, T previousClone, boolean overwrite, CloneOptions options, String... patterns) {
+		JpaExplorer explorer = JpaExplorer.doExplore(Collections.singleton(root), options, patterns);
+		CloneEngine engine = new CloneEngine(options, explorer.entities.size());
+		engine.setProjections(explorer.projections);
+		if (previousClone != null) {
+			JpaExplorer previousExplorer = JpaExplorer.doExplore(previousClone, options.getPropertyFilter(), patterns);
+			Map<Object, Object> previousClones = new HashMap<Object, Object>(previousExplorer.entities.size() * 2);
+			for (Object clone : previousExplorer.entities.keySet()) {
+				previousClones.put(clone, clone);
+			}
+			engine.setPreviousClones(previousClones, overwrite);
+		}
+		for (Map.Entry<Object, Set<String>> entry : explorer.entities.entrySet()) {
+			engine.add(entry.getKey(), entry.getValue());
+		}
+		return (T) engine.finish().get(root);
+	}
+
+	/**
+	 * Merges the clone graph back into the managed graph, the inverse of the cloning. Entities are matched by equals 
+	 * (i.e. by identifiers), only properties with differing values are written and collections are reconciled 
+	 * in place element by element, so the dirty state of the managed graph is minimal. Cloned entities missing in 
+	 * the managed graph are instantiated and wired (they must be persisted e.g. by cascading), entities missing 
+	 * in the clone graph are removed from managed relations. Relations which are <code>null</code> in the clone 
+	 * are not merged. Returns the managed root. For description of patterns see the {@link GraphExplorer}.
+	 */
+	public static <T> T mergeBack(T clone, T managedRoot, String... patterns) {
+		return mergeBack(clone, managedRoot, PropertyFilters.getDefaultFilter(), patterns);
+	}
+
+	/**
+	 * Merges the clone graph back into the managed graph, see {@link #mergeBack(Object, Object, String...)}.
+	 * The property filter excludes merged properties (e.g. {@link javax.persistence.Version}). 
+	 * For description of patterns see the {@link GraphExplorer}.
+	 */
+	public static <T> T mergeBack(T clone, T managedRoot, PropertyFilter propertyFilter, String... patterns) {
+		if (clone == null || managedRoot == null) {
+			throw new NullPointerException();
+		}
+		if (!clone.equals(managedRoot)) {
+			throw new IllegalArgumentException("The clone does not match the managed root: " + clone + ", " + managedRoot);
+		}
+		new MergeEngine(clone, managedRoot, propertyFilter, patterns).merge();
+		return managedRoot;
+	}
+
 	/**
 	 * Copy properties (not relations) from o1 to o2.
 	 */
-	private static void copyBasicProperties(Object o1, Object o2, JpaClassInfo classInfo, PropertyFilter propertyFilter) {
-		for (String property : classInfo.getBaseProperties()) {
-			if (propertyFilter.test(o1, property)) {
+	static void copyBasicProperties(Object o1, Object o2, JpaClassInfo classInfo, List<String> properties, PropertyFilter propertyFilter) {
+		for (String property : properties) {
+			if (classInfo.test(propertyFilter, o1, property)) {
 				JpaPropertyInfo propertyInfo = classInfo.getPropertyInfo(property);
 				Object value = propertyInfo.getValue(o1);
 				propertyInfo.setValue(o2, value);
@@ -261,7 +303,7 @@ public final class JpaCloner {
 	 */
 	public static <T, X extends T> void copy(T o1, X o2, PropertyFilter propertyFilter) {
 		JpaClassInfo classInfo = JpaClassInfo.get(o1.getClass());
-		copyBasicProperties(o1, o2, classInfo, propertyFilter);
+		copyBasicProperties(o1, o2, classInfo, classInfo.getBaseProperties(), propertyFilter);
 	}
 
 }
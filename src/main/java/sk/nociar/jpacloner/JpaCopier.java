@@ -0,0 +1,296 @@
+package sk.nociar.jpacloner;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Deep copy of detached graphs (e.g. clone graphs), i.e. no patterns, no property filters and no JPA exploration.
+ * All JPA objects reachable from the root are copied, objects are matched by identity. Each class has
+ * a precomputed copier (basic properties, singular relations and collections), collections are wired in
+ * the end because hash codes of copies may depend on singular relations. Example:
+ * <pre>
+ * Company clone = JpaCloner.clone(company, "departments+.(boss|employees).address");
+ * List&lt;Company&gt; copies = JpaCopier.copy(clone, workers, new CloneOptions());
+ * </pre>
+ * Lazy loading is never triggered: the graph MUST be detached (or fully loaded), uninitialized proxies are
+ * not supported. Basic values are shared (as in clones). The copy is thread safe, the source graph MUST NOT
+ * be modified during the copy.
+ *
+ * @author Miroslav Nociar
+ */
+public final class JpaCopier {
+
+	/**
+	 * Precomputed copier of a JPA class.
+	 */
+	private static final class ClassCopier {
+		private final Constructor<?> constructor;
+		/** Basic properties including lazy ones */
+		private final JpaPropertyInfo[] basicProperties;
+		/** @ManyToOne, @OneToOne, @Embedded, @EmbeddedId */
+		private final JpaPropertyInfo[] singularRelations;
+		/** @OneToMany, @ManyToMany, @ElementCollection */
+		private final JpaPropertyInfo[] collections;
+
+		private ClassCopier(JpaClassInfo classInfo) {
+			List<JpaPropertyInfo> basic = new ArrayList<JpaPropertyInfo>();
+			List<JpaPropertyInfo> singular = new ArrayList<JpaPropertyInfo>();
+			List<JpaPropertyInfo> collections = new ArrayList<JpaPropertyInfo>();
+			for (String property : classInfo.getBaseProperties()) {
+				basic.add(classInfo.getPropertyInfo(property));
+			}
+			for (String relation : classInfo.getRelations()) {
+				JpaPropertyInfo propertyInfo = classInfo.getPropertyInfo(relation);
+				(propertyInfo.isSingular() ? singular : collections).add(propertyInfo);
+			}
+			this.constructor = classInfo.getConstructor();
+			this.basicProperties = basic.toArray(new JpaPropertyInfo[basic.size()]);
+			this.singularRelations = singular.toArray(new JpaPropertyInfo[singular.size()]);
+			this.collections = collections.toArray(new JpaPropertyInfo[collections.size()]);
+		}
+	}
+
+	/**
+	 * Collection relation waiting for wiring.
+	 */
+	private static final class PendingCollection {
+		private final Object copy;
+		private final JpaPropertyInfo propertyInfo;
+		private final Object originalValue;
+		/** Copied elements (values of a map) */
+		private final Object[] elements;
+		/** Copied keys of a map or <code>null</code> */
+		private final Object[] keys;
+
+		private PendingCollection(Object copy, JpaPropertyInfo propertyInfo, Object originalValue, Object[] elements, Object[] keys) {
+			this.copy = copy;
+			this.propertyInfo = propertyInfo;
+			this.originalValue = originalValue;
+			this.elements = elements;
+			this.keys = keys;
+		}
+	}
+
+	/**
+	 * Marker of non JPA classes in the copier cache.
+	 */
+	private static final Object NO_COPIER = new Object();
+
+	private static final ConcurrentMap<Class<?>, Object> copiers = new ConcurrentHashMap<Class<?>, Object>();
+
+	private final CollectionFactory collectionFactory;
+
+	/**
+	 * Copies of original objects matched by identity.
+	 */
+	private final Map<Object, Object> copies = new IdentityHashMap<Object, Object>();
+
+	/**
+	 * Copied objects waiting for relations, the original is followed by its copy.
+	 */
+	private final Deque<Object> pending = new ArrayDeque<Object>();
+
+	private final List<PendingCollection> pendingCollections = new ArrayList<PendingCollection>();
+
+	private JpaCopier(CollectionFactory collectionFactory) {
+		this.collectionFactory = collectionFactory;
+	}
+
+	/**
+	 * Copies the detached graph, the root can be a JPA object or a collection (map) of JPA objects.
+	 */
+	public static <T> T copy(T root) {
+		return copy(root, CollectionFactories.getDefaultFactory());
+	}
+
+	/**
+	 * Copies the detached graph, copied collections are created by the collection factory.
+	 * The root can be a JPA object or a collection (map) of JPA objects.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static <T> T copy(T root, CollectionFactory collectionFactory) {
+		JpaCopier copier = new JpaCopier(collectionFactory);
+		if (root instanceof Collection) {
+			Collection collection = (Collection) root;
+			Object[] elements = copier.copyElements(collection);
+			copier.finish();
+			return (T) collectionFactory.newCollection(collection, elements);
+		} else if (root instanceof Map) {
+			Map map = (Map) root;
+			Object[] keys = new Object[map.size()];
+			Object[] values = copier.copyEntries(map, keys);
+			copier.finish();
+			return (T) collectionFactory.newMap(map, keys, values);
+		}
+		T copy = (T) copier.getCopy(root);
+		copier.finish();
+		return copy;
+	}
+
+	/**
+	 * Returns independent copies of the detached graph, copies are created in parallel by
+	 * the executor of options (by the calling thread if there is no executor). Copied collections
+	 * are created by the collection factory of options.
+	 */
+	public static <T> List<T> copy(final T root, int count, final CloneOptions options) {
+		if (count < 0) {
+			throw new IllegalArgumentException("Negative count: " + count);
+		}
+		if (options.getExecutor() == null || count <= 1) {
+			List<T> copies = new ArrayList<T>(count);
+			for (int i = 0; i < count; i++) {
+				copies.add(copy(root, options.getCollectionFactory()));
+			}
+			return copies;
+		}
+		List<Callable<T>> tasks = new ArrayList<Callable<T>>(count);
+		for (int i = 0; i < count; i++) {
+			tasks.add(new Callable<T>() {
+				@Override
+				public T call() {
+					return copy(root, options.getCollectionFactory());
+				}
+			});
+		}
+		return ParallelCloneEngine.invokeAll(options.getExecutor(), tasks);
+	}
+
+	/**
+	 * Copies all clones of the map of original -&gt; clone (e.g. collected from a previous clone), returns
+	 * the map of original -&gt; copy. Clones shared by the graphs are copied once.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <K, V> Map<K, V> copyAll(Map<K, V> originalToClone, CollectionFactory collectionFactory) {
+		JpaCopier copier = new JpaCopier(collectionFactory);
+		Map<K, V> originalToCopy = new HashMap<K, V>(Math.max(16, (int) (originalToClone.size() / .75f) + 1));
+		for (Entry<K, V> entry : originalToClone.entrySet()) {
+			originalToCopy.put(entry.getKey(), (V) copier.getCopy(entry.getValue()));
+		}
+		copier.finish();
+		return originalToCopy;
+	}
+
+	private static ClassCopier getCopier(Class<?> clazz) {
+		Object copier = copiers.get(clazz);
+		if (copier == null) {
+			JpaClassInfo classInfo = JpaClassInfo.get(clazz);
+			copier = classInfo == null ? NO_COPIER : new ClassCopier(classInfo);
+			copiers.putIfAbsent(clazz, copier);
+		}
+		return copier == NO_COPIER ? null : (ClassCopier) copier;
+	}
+
+	/**
+	 * Returns the copy of a JPA object (created on demand) or the passed object if it is not a JPA object.
+	 */
+	private Object getCopy(Object original) {
+		if (original == null) {
+			return null;
+		}
+		Object copy = copies.get(original);
+		if (copy != null) {
+			return copy;
+		}
+		ClassCopier copier = getCopier(original.getClass());
+		if (copier == null) {
+			return original;
+		}
+		try {
+			copy = copier.constructor.newInstance();
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to copy: " + original, e);
+		}
+		for (JpaPropertyInfo propertyInfo : copier.basicProperties) {
+			propertyInfo.setValue(copy, propertyInfo.getValue(original));
+		}
+		copies.put(original, copy);
+		pending.addLast(original);
+		pending.addLast(copy);
+		return copy;
+	}
+
+	/**
+	 * Wires singular relations of all copies (i.e. copies the whole graph) and then collections.
+	 */
+	@SuppressWarnings("rawtypes")
+	private void finish() {
+		while (!pending.isEmpty()) {
+			Object original = pending.removeFirst();
+			Object copy = pending.removeFirst();
+			ClassCopier copier = getCopier(original.getClass());
+			for (JpaPropertyInfo propertyInfo : copier.singularRelations) {
+				propertyInfo.setValue(copy, getCopy(propertyInfo.getValue(original)));
+			}
+			for (JpaPropertyInfo propertyInfo : copier.collections) {
+				Object value = propertyInfo.getValue(original);
+				if (value instanceof Collection) {
+					Collection collection = (Collection) value;
+					Object[] elements = propertyInfo.isBasicCollection() ? collection.toArray() : copyElements(collection);
+					pendingCollections.add(new PendingCollection(copy, propertyInfo, value, elements, null));
+				} else if (value instanceof Map) {
+					Map map = (Map) value;
+					Object[] keys = new Object[map.size()];
+					Object[] values = copyEntries(map, keys);
+					pendingCollections.add(new PendingCollection(copy, propertyInfo, value, values, keys));
+				} else if (value == null) {
+					propertyInfo.setValue(copy, null);
+				} else {
+					throw new IllegalStateException("Unsupported collection type: " + value.getClass());
+				}
+			}
+		}
+		for (PendingCollection p : pendingCollections) {
+			Object copiedValue = null;
+			if (p.keys != null) {
+				copiedValue = collectionFactory.newMap((Map) p.originalValue, p.keys, p.elements);
+			} else {
+				if (p.originalValue instanceof PrimitiveList || p.originalValue instanceof PrimitiveSet) {
+					// keep primitive collections primitive
+					copiedValue = CloneEngine.copyPrimitiveCollection((Collection) p.originalValue, p.propertyInfo.getTargetClass());
+				}
+				if (copiedValue == null) {
+					copiedValue = collectionFactory.newCollection((Collection) p.originalValue, p.elements);
+				}
+			}
+			p.propertyInfo.setValue(p.copy, copiedValue);
+		}
+		pendingCollections.clear();
+	}
+
+	@SuppressWarnings("rawtypes")
+	private Object[] copyElements(Collection collection) {
+		Object[] elements = new Object[collection.size()];
+		int i = 0;
+		for (Object o : collection) {
+			elements[i++] = getCopy(o);
+		}
+		return elements;
+	}
+
+	/**
+	 * Copies entries of the map, copied keys are stored in the passed array, copied values are returned.
+	 */
+	@SuppressWarnings("rawtypes")
+	private Object[] copyEntries(Map map, Object[] keys) {
+		Object[] values = new Object[keys.length];
+		int i = 0;
+		for (Object o : map.entrySet()) {
+			Entry entry = (Entry) o;
+			keys[i] = getCopy(entry.getKey());
+			values[i] = getCopy(entry.getValue());
+			i++;
+		}
+		return values;
+	}
+}
@@ -0,0 +1,317 @@
+package sk.nociar.jpacloner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.persistence.Embeddable;
+import javax.persistence.Entity;
+
+import sk.nociar.jpacloner.graphs.GraphExplorer;
+
+/**
+ * Structural diff of two entity graphs (e.g. an old clone and a current managed graph) explored by the same patterns.
+ * Entities ({@link Entity}) are matched by equals, {@link Embeddable} objects are compared by value as parts of 
+ * their owners i.e. changes of embeddables are reported with a path e.g. "address.city". Cycles and {@link Map} 
+ * keys/values are handled the same way as in the {@link JpaExplorer}. Example:<br/>
+ * <pre>
+ * JpaDiff diff = JpaDiff.diff(oldClone, company, "department+.(boss|employees).address");
+ * diff.getAdded();   // new entities
+ * diff.getRemoved(); // entities which disappeared
+ * diff.getChanges(); // changed properties of matched entities
+ * </pre>
+ * Embeddables in collections must implement equals and hashCode.
+ * 
+ * @author Miroslav Nociar
+ */
+public final class JpaDiff {
+	
+	/**
+	 * Changed property (basic or relation) of an entity.
+	 */
+	public static final class Change {
+		private final Object entity;
+		private final String property;
+		private final Object oldValue;
+		private final Object newValue;
+		private final Collection<?> addedElements;
+		private final Collection<?> removedElements;
+
+		private Change(Object entity, String property, Object oldValue, Object newValue, 
+				Collection<?> addedElements, Collection<?> removedElements) {
+			this.entity = entity;
+			this.property = property;
+			this.oldValue = oldValue;
+			this.newValue = newValue;
+			this.addedElements = addedElements;
+			this.removedElements = removedElements;
+		}
+
+		/**
+		 * Returns the entity of the new graph.
+		 */
+		public Object getEntity() {
+			return entity;
+		}
+
+		/**
+		 * Returns the property, properties of embeddables are prefixed by the path e.g. "address.city".
+		 */
+		public String getProperty() {
+			return property;
+		}
+
+		public Object getOldValue() {
+			return oldValue;
+		}
+
+		public Object getNewValue() {
+			return newValue;
+		}
+
+		/**
+		 * Returns added elements of a collection relation (entries of a {@link Map}), empty for other properties.
+		 */
+		public Collection<?> getAddedElements() {
+			return addedElements;
+		}
+
+		/**
+		 * Returns removed elements of a collection relation (entries of a {@link Map}), empty for other properties.
+		 */
+		public Collection<?> getRemovedElements() {
+			return removedElements;
+		}
+
+		@Override
+		public String toString() {
+			if (addedElements.isEmpty() && removedElements.isEmpty()) {
+				return entity + "." + property + ": " + oldValue + " -> " + newValue;
+			}
+			return entity + "." + property + ": +" + addedElements + " -" + removedElements;
+		}
+	}
+	
+	private final List<Object> added = new ArrayList<Object>();
+	
+	private final List<Object> removed = new ArrayList<Object>();
+	
+	private final List<Change> changes = new ArrayList<Change>();
+	
+	private JpaDiff() {
+	}
+	
+	/**
+	 * Walker of both graphs, collects the diff.
+	 */
+	private static final class Walker {
+	
+		private final JpaDiff diff = new JpaDiff();
+	
+		private final PropertyFilter propertyFilter;
+	
+		private final JpaExplorer oldExplorer;
+	
+		private final JpaExplorer newExplorer;
+
+		private Walker(Object oldRoot, Object newRoot, PropertyFilter propertyFilter, String... patterns) {
+			this.propertyFilter = propertyFilter;
+			this.oldExplorer = JpaExplorer.doExplore(oldRoot, propertyFilter, patterns);
+			this.newExplorer = JpaExplorer.doExplore(newRoot, propertyFilter, patterns);
+			Map<Object, Object> oldEntities = new HashMap<Object, Object>();
+			for (Object o : oldExplorer.entities.keySet()) {
+				if (isEntity(o)) {
+					oldEntities.put(o, o);
+				}
+			}
+			Set<Object> matched = new HashSet<Object>();
+			for (Entry<Object, Set<String>> entry : newExplorer.entities.entrySet()) {
+				Object n = entry.getKey();
+				if (!isEntity(n)) {
+					continue;
+				}
+				Object o = oldEntities.get(n);
+				if (o == null) {
+					diff.added.add(n);
+				} else {
+					matched.add(o);
+					compare(n, "", o, n, getRelations(o, n));
+				}
+			}
+			for (Object o : oldEntities.keySet()) {
+				if (!matched.contains(o)) {
+					diff.removed.add(o);
+				}
+			}
+		}
+	
+		private static boolean isEntity(Object o) {
+			Class<?> jpaClass = JpaClassInfo.getJpaClass(o.getClass());
+			return jpaClass != null && jpaClass.getAnnotation(Entity.class) != null;
+		}
+	
+		private static boolean isEmbeddable(Object o) {
+			Class<?> jpaClass = o == null ? null : JpaClassInfo.getJpaClass(o.getClass());
+			return jpaClass != null && jpaClass.getAnnotation(Embeddable.class) != null;
+		}
+	
+		/**
+		 * Returns explored relations of an object in both graphs.
+		 */
+		private Set<String> getRelations(Object o, Object n) {
+			Set<String> relations = new LinkedHashSet<String>();
+			Set<String> oldRelations = oldExplorer.entities.get(o);
+			if (oldRelations != null) {
+				relations.addAll(oldRelations);
+			}
+			Set<String> newRelations = newExplorer.entities.get(n);
+			if (newRelations != null) {
+				relations.addAll(newRelations);
+			}
+			return relations;
+		}
+	
+		/**
+		 * Compares matched objects (entities or embeddables) of the same class.
+		 */
+		private void compare(Object entity, String path, Object o, Object n, Set<String> relations) {
+			JpaClassInfo classInfo = JpaClassInfo.get(n.getClass());
+			if (JpaClassInfo.get(o.getClass()) != classInfo) {
+				diff.changes.add(new Change(entity, path.isEmpty() ? "class" : path.substring(0, path.length() - 1), o, n, 
+						Collections.emptyList(), Collections.emptyList()));
+				return;
+			}
+			// basic properties
+			for (String property : newExplorer.getBaseProperties(n, classInfo)) {
+				if (classInfo.test(propertyFilter, n, property)) {
+					JpaPropertyInfo propertyInfo = classInfo.getPropertyInfo(property);
+					Object oldValue = propertyInfo.getValue(o);
+					Object newValue = propertyInfo.getValue(n);
+					if (!CloneEngine.isEqual(oldValue, newValue)) {
+						diff.changes.add(new Change(entity, path + property, oldValue, newValue, 
+								Collections.emptyList(), Collections.emptyList()));
+					}
+				}
+			}
+			// explored relations
+			for (String relation : relations) {
+				JpaPropertyInfo propertyInfo = classInfo.getPropertyInfo(relation);
+				Object oldValue = propertyInfo.getValue(o);
+				Object newValue = propertyInfo.getValue(n);
+				if (propertyInfo.isSingular()) {
+					if (!propertyInfo.isBasic() && isEmbeddable(oldValue) && isEmbeddable(newValue)) {
+						compare(entity, path + relation + ".", oldValue, newValue, getRelations(oldValue, newValue));
+					} else if (!CloneEngine.isEqual(oldValue, newValue)) {
+						diff.changes.add(new Change(entity, path + relation, oldValue, newValue, 
+								Collections.emptyList(), Collections.emptyList()));
+					}
+				} else {
+					compareCollections(entity, path + relation, oldValue, newValue);
+				}
+			}
+		}
+	
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		private void compareCollections(Object entity, String property, Object oldValue, Object newValue) {
+			Collection oldElements = elements(oldValue);
+			Collection newElements = elements(newValue);
+			if (oldValue instanceof List && newValue instanceof List ? isEqualList((List) oldValue, (List) newValue) 
+					: new HashSet(oldElements).equals(new HashSet(newElements))) {
+				return;
+			}
+			Set addedElements = new LinkedHashSet(newElements);
+			addedElements.removeAll(oldElements);
+			Set removedElements = new LinkedHashSet(oldElements);
+			removedElements.removeAll(newElements);
+			diff.changes.add(new Change(entity, property, oldValue, newValue, addedElements, removedElements));
+		}
+	
+		/**
+		 * Compares lists element-wise, list implementations may use the identity equals (e.g. Hibernate bags).
+		 */
+		@SuppressWarnings("rawtypes")
+		private static boolean isEqualList(List oldList, List newList) {
+			if (oldList.size() != newList.size()) {
+				return false;
+			}
+			Iterator oldIterator = oldList.iterator();
+			Iterator newIterator = newList.iterator();
+			while (oldIterator.hasNext()) {
+				if (!CloneEngine.isEqual(oldIterator.next(), newIterator.next())) {
+					return false;
+				}
+			}
+			return true;
+		}
+	
+		/**
+		 * Returns elements of a collection or entries of a map, empty collection for <code>null</code>.
+		 */
+		@SuppressWarnings("rawtypes")
+		private static Collection elements(Object value) {
+			if (value instanceof Collection) {
+				return (Collection) value;
+			}
+			if (value instanceof Map) {
+				return ((Map) value).entrySet();
+			}
+			return Collections.emptyList();
+		}
+	}
+
+	/**
+	 * Computes the diff of two graphs explored by the patterns. For description of patterns see the {@link GraphExplorer}.
+	 */
+	public static JpaDiff diff(Object oldRoot, Object newRoot, String... patterns) {
+		return diff(oldRoot, newRoot, PropertyFilters.getDefaultFilter(), patterns);
+	}
+
+	/**
+	 * Computes the diff of two graphs explored by the patterns, the property filter excludes compared properties.
+	 * For description of patterns see the {@link GraphExplorer}.
+	 */
+	public static JpaDiff diff(Object oldRoot, Object newRoot, PropertyFilter propertyFilter, String... patterns) {
+		return new Walker(oldRoot, newRoot, propertyFilter, patterns).diff;
+	}
+
+	/**
+	 * Returns entities of the new graph which are not in the old graph.
+	 */
+	public List<Object> getAdded() {
+		return Collections.unmodifiableList(added);
+	}
+
+	/**
+	 * Returns entities of the old graph which are not in the new graph.
+	 */
+	public List<Object> getRemoved() {
+		return Collections.unmodifiableList(removed);
+	}
+
+	/**
+	 * Returns changed properties of entities which are in both graphs.
+	 */
+	public List<Change> getChanges() {
+		return Collections.unmodifiableList(changes);
+	}
+	
+	/**
+	 * Returns <code>true</code> if graphs are equal.
+	 */
+	public boolean isEmpty() {
+		return added.isEmpty() && removed.isEmpty() && changes.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return "added=" + added + ", removed=" + removed + ", changes=" + changes;
+	}
+}
@@ -0,0 +1,371 @@
+package sk.nociar.jpacloner;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import sk.nociar.jpacloner.graphs.GraphExplorer;
+
+/**
+ * Immutable result of an exploration, i.e. explore once and clone many times. Each clone can have
+ * its own {@link CloneOptions} (the property filter of <b>basic properties</b>, the collection factory, the parallel
+ * cloning), explored relations are fixed by the exploration. Example:
+ * <pre>
+ * JpaExploration exploration = JpaExploration.explore(company, "departments+.(boss|employees).address");
+ * Company full = exploration.clone(company, new CloneOptions());
+ * Company withoutIds = exploration.clone(company, new CloneOptions(PropertyFilters.getAnnotationFilter(Id.class)));
+ * List&lt;Map&lt;Object, Object&gt;&gt; fanOut = exploration.clone(3, new CloneOptions());
+ * </pre>
+ * An exploration can be extended by additional patterns, only newly reached objects and relations are cloned into 
+ * the existing clone graph:
+ * <pre>
+ * Map&lt;Object, Object&gt; originalToClone = exploration.clone(options);
+ * JpaExploration extended = exploration.extend("departments+.boss.car");
+ * extended.cloneInto(originalToClone, options);
+ * </pre>
+ * Explored objects can be queried by classes, parent links (i.e. the relation of a shortest path from roots 
+ * to an object) and paths from roots are available if recorded, see {@link CloneOptions#setRecordingParents(boolean)}.
+ * Instances are thread safe i.e. concurrent clones are allowed. The explored graph MUST NOT be modified
+ * while it is cloned, the lazy loading can be triggered only by lazy basic properties requested by patterns.
+ *
+ * @author Miroslav Nociar
+ */
+public final class JpaExploration {
+
+	private final List<Object> roots;
+
+	private final Map<Object, Set<String>> entities;
+
+	private final Map<Object, Set<String>> projections;
+
+	/**
+	 * The explorer of this exploration (never modified) shared by extensions.
+	 */
+	private final JpaExplorer explorer;
+
+	/**
+	 * The extended exploration or <code>null</code>.
+	 */
+	private final JpaExploration base;
+
+	private JpaExploration(List<Object> roots, JpaExplorer explorer, JpaExploration base) {
+		this.roots = roots;
+		this.explorer = explorer;
+		this.base = base;
+		this.entities = base == null ? Collections.unmodifiableMap(explorer.entities) 
+				: new LayeredEntities(base.entities, explorer.entities);
+		this.projections = Collections.unmodifiableMap(explorer.projections);
+	}
+
+	/**
+	 * Explores the passed JPA entity. For description of patterns see the {@link GraphExplorer}.
+	 */
+	public static JpaExploration explore(Object root, String... patterns) {
+		return explore(Collections.singleton(root), new CloneOptions(), patterns);
+	}
+
+	/**
+	 * Explores a collection of JPA entities with the passed options (the property filter of relations and the
+	 * concurrent exploration), see {@link JpaExplorer#doExplore(Collection, CloneOptions, String...)}.
+	 * For description of patterns see the {@link GraphExplorer}.
+	 */
+	public static JpaExploration explore(Collection<?> roots, CloneOptions options, String... patterns) {
+		List<Object> list = Collections.unmodifiableList(new ArrayList<Object>(roots));
+		return new JpaExploration(list, JpaExplorer.doExplore(list, options, patterns), null);
+	}
+
+	/**
+	 * Returns a new exploration extended by the patterns, this exploration is not modified and it is shared 
+	 * (not copied) i.e. the extension records only newly reached objects and newly explored relations. 
+	 * Patterns are explored from roots: the exploration records explored relations of objects, not the states 
+	 * of patterns by which objects were reached, so a pattern cannot be resumed from previously reached objects. 
+	 * Relations explored before are walked again but not recorded again. 
+	 * For description of patterns see the {@link GraphExplorer}.
+	 */
+	public JpaExploration extend(String... patterns) {
+		JpaExplorer extended = explorer.extend();
+		extended.explore(roots, patterns);
+		return new JpaExploration(roots, extended, this);
+	}
+
+	/**
+	 * Returns the extended exploration or <code>null</code>, see {@link #extend(String...)}.
+	 */
+	public JpaExploration getBase() {
+		return base;
+	}
+
+	/**
+	 * Returns roots of the exploration.
+	 */
+	public List<Object> getRoots() {
+		return roots;
+	}
+
+	/**
+	 * Returns the number of explored JPA objects (entities and embeddables).
+	 */
+	public int size() {
+		return entities.size();
+	}
+
+	/**
+	 * Returns <code>true</code> if the JPA object was explored.
+	 */
+	public boolean contains(Object object) {
+		return entities.containsKey(object);
+	}
+
+	/**
+	 * Returns explored objects of the class (including subclasses), the result is not modifiable.
+	 */
+	public <T> Set<T> getEntities(Class<T> clazz) {
+		return explorer.getIndexedEntities(clazz);
+	}
+
+	/**
+	 * Returns JPA classes of explored objects (i.e. raw classes, not proxy classes).
+	 */
+	public Set<Class<?>> getClasses() {
+		Set<Class<?>> classes = new HashSet<Class<?>>();
+		for (Class<?> clazz : explorer.getClasses()) {
+			classes.add(JpaClassInfo.getJpaClass(clazz));
+		}
+		return Collections.unmodifiableSet(classes);
+	}
+
+	/**
+	 * Returns the relation of a shortest path from roots to the object, <code>null</code> for roots and objects 
+	 * which are not explored.
+	 * 
+	 * @throws IllegalStateException
+	 *             if parent links are not recorded
+	 */
+	public ParentLink getParent(Object object) {
+		checkParents();
+		return explorer.getParentLink(object);
+	}
+
+	/**
+	 * Returns properties of a shortest path from roots to the object (e.g. [departments, boss]), 
+	 * an empty list for roots or <code>null</code> if the object is not explored.
+	 * 
+	 * @throws IllegalStateException
+	 *             if parent links are not recorded
+	 */
+	public List<String> getPath(Object object) {
+		checkParents();
+		if (!entities.containsKey(object)) {
+			return null;
+		}
+		LinkedList<String> path = new LinkedList<String>();
+		for (ParentLink link = explorer.getParentLink(object); link != null; link = explorer.getParentLink(link.getParent())) {
+			path.addFirst(link.getProperty());
+		}
+		return path;
+	}
+
+	private void checkParents() {
+		if (explorer.parents == null) {
+			throw new IllegalStateException("Parent links are not recorded, see CloneOptions#setRecordingParents(boolean)");
+		}
+	}
+
+	/**
+	 * Returns explored relations (and requested lazy properties) of the JPA object or <code>null</code> if not explored.
+	 */
+	public Set<String> getRelations(Object object) {
+		Set<String> relations = entities.get(object);
+		return relations == null ? null : Collections.unmodifiableSet(relations);
+	}
+
+	/**
+	 * Clones all explored objects with the passed options, returns the map of original -&gt; clone.
+	 */
+	public Map<Object, Object> clone(CloneOptions options) {
+		return JpaCloner.clone(entities, projections, options);
+	}
+
+	/**
+	 * Clones the explored object (e.g. a root) with the passed options.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T clone(T original, CloneOptions options) {
+		if (!entities.containsKey(original)) {
+			throw new IllegalArgumentException("Not explored: " + original);
+		}
+		return (T) clone(options).get(original);
+	}
+
+	/**
+	 * Creates <code>count</code> independent clone graphs in one pass over explored objects, returns maps
+	 * of original -&gt; clone. The clone is not parallel.
+	 */
+	public List<Map<Object, Object>> clone(int count, CloneOptions options) {
+		if (count < 0) {
+			throw new IllegalArgumentException("Negative count: " + count);
+		}
+		CloneEngine[] engines = new CloneEngine[count];
+		for (int i = 0; i < count; i++) {
+			engines[i] = new CloneEngine(options, entities.size());
+			engines[i].setProjections(projections);
+		}
+		for (Map.Entry<Object, Set<String>> entry : entities.entrySet()) {
+			for (CloneEngine engine : engines) {
+				engine.add(entry.getKey(), entry.getValue());
+			}
+		}
+		List<Map<Object, Object>> clones = new ArrayList<Map<Object, Object>>(count);
+		for (CloneEngine engine : engines) {
+			clones.add(engine.finish());
+		}
+		return clones;
+	}
+
+	/**
+	 * Clones the extension into the clone graph of the extended exploration, see {@link #extend(String...)}. 
+	 * Objects reached by the extension are cloned, newly explored relations of existing clones are wired and 
+	 * widened projections are copied. The passed map of original -&gt; clone (of the extended exploration) is 
+	 * updated and returned. The clone is not parallel.
+	 */
+	public Map<Object, Object> cloneInto(Map<Object, Object> originalToClone, CloneOptions options) {
+		if (base == null) {
+			throw new IllegalStateException("Not an extended exploration");
+		}
+		CloneEngine engine = new CloneEngine(options, originalToClone);
+		engine.setProjections(projections);
+		// objects recorded by the extension
+		for (Map.Entry<Object, Set<String>> entry : explorer.entities.entrySet()) {
+			Object original = entry.getKey();
+			Set<String> previous = base.entities.get(original);
+			if (previous == null || !originalToClone.containsKey(original)) {
+				engine.add(original, entry.getValue());
+			} else if (previous.size() < entry.getValue().size()) {
+				Set<String> added = new HashSet<String>(entry.getValue());
+				added.removeAll(previous);
+				engine.add(original, added);
+			}
+		}
+		// changed projections of existing clones
+		Set<Object> projected = new HashSet<Object>(base.projections.keySet());
+		projected.addAll(projections.keySet());
+		for (Object original : projected) {
+			if (base.entities.containsKey(original) && originalToClone.containsKey(original) 
+					&& !CloneEngine.isEqual(base.projections.get(original), projections.get(original))) {
+				engine.copyBasicProperties(original);
+			}
+		}
+		return engine.finish();
+	}
+
+	@Override
+	public String toString() {
+		return "roots=" + roots.size() + ", explored=" + entities.size();
+	}
+
+	/**
+	 * Unmodifiable view of explored objects of an extension, objects recorded by the extension hide 
+	 * objects of the extended exploration.
+	 */
+	private static final class LayeredEntities extends AbstractMap<Object, Set<String>> {
+
+		private final Map<Object, Set<String>> base;
+
+		private final Map<Object, Set<String>> recorded;
+
+		private final int size;
+
+		private LayeredEntities(Map<Object, Set<String>> base, Map<Object, Set<String>> recorded) {
+			this.base = base;
+			this.recorded = recorded;
+			int size = base.size();
+			for (Object object : recorded.keySet()) {
+				if (!base.containsKey(object)) {
+					size++;
+				}
+			}
+			this.size = size;
+		}
+
+		@Override
+		public Set<String> get(Object key) {
+			Set<String> properties = recorded.get(key);
+			return properties == null ? base.get(key) : properties;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return recorded.containsKey(key) || base.containsKey(key);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Set<Entry<Object, Set<String>>> entrySet() {
+			return new AbstractSet<Entry<Object, Set<String>>>() {
+				@Override
+				public Iterator<Entry<Object, Set<String>>> iterator() {
+					return new Iterator<Entry<Object, Set<String>>>() {
+						private final Iterator<Entry<Object, Set<String>>> recordedIterator = recorded.entrySet().iterator();
+						private final Iterator<Entry<Object, Set<String>>> baseIterator = base.entrySet().iterator();
+						private Entry<Object, Set<String>> next = advance();
+
+						/**
+						 * Returns the next entry, entries of the base hidden by recorded objects are skipped.
+						 */
+						private Entry<Object, Set<String>> advance() {
+							if (recordedIterator.hasNext()) {
+								Entry<Object, Set<String>> entry = recordedIterator.next();
+								return new SimpleImmutableEntry<Object, Set<String>>(entry);
+							}
+							while (baseIterator.hasNext()) {
+								Entry<Object, Set<String>> entry = baseIterator.next();
+								if (!recorded.containsKey(entry.getKey())) {
+									return entry;
+								}
+							}
+							return null;
+						}
+
+						@Override
+						public boolean hasNext() {
+							return next != null;
+						}
+
+						@Override
+						public Entry<Object, Set<String>> next() {
+							if (next == null) {
+								throw new NoSuchElementException();
+							}
+							Entry<Object, Set<String>> entry = next;
+							next = advance();
+							return entry;
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		}
+	}
+}
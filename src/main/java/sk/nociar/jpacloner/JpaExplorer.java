@@ -3,6 +3,7 @@ package sk.nociar.jpacloner;
 import static java.util.Arrays.asList;
 import static java.util.Collections.unmodifiableList;
 
+import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -11,27 +12,141 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 
-import sk.nociar.jpacloner.graphs.EntityExplorer;
+import sk.nociar.jpacloner.graphs.ConcurrentEntityExplorer;
+import sk.nociar.jpacloner.graphs.EntitySink;
 import sk.nociar.jpacloner.graphs.GraphExplorer;
+import sk.nociar.jpacloner.graphs.MatchingEntityExplorer;
+import sk.nociar.jpacloner.graphs.PatternExplanation;
+import sk.nociar.jpacloner.graphs.ProjectingEntityExplorer;
+import sk.nociar.jpacloner.graphs.StreamingEntityExplorer;
+import sk.nociar.jpacloner.graphs.WildcardPattern;
 
 /**
  * Generic explorer of JPA entities. Explored entities can be accessed by the method {@link #getEntities(Class)}.
+ * Detached graphs can be explored concurrently, see {@link #doExplore(Collection, CloneOptions, String...)}.
  * 
  * @author Miroslav Nociar
  *
  */
-public final class JpaExplorer implements EntityExplorer {
+public final class JpaExplorer implements StreamingEntityExplorer, ConcurrentEntityExplorer, ProjectingEntityExplorer, MatchingEntityExplorer {
 	
 	final PropertyFilter propertyFilter;
 	
-	final Map<Object, Set<String>> entities = new HashMap<Object, Set<String>>();
+	/**
+	 * The extended explorer (never modified) or <code>null</code>. An extension records only objects which are 
+	 * newly reached or have newly explored relations, see {@link #extend()}.
+	 */
+	private final JpaExplorer base;
+	
+	/**
+	 * Explored JPA objects and their explored relations (of an extension only objects recorded by the extension).
+	 */
+	final Map<Object, Set<String>> entities;
+	
+	/**
+	 * Projected basic properties of explored objects, objects without a projection have all basic properties.
+	 */
+	final Map<Object, Set<String>> projections;
+	
+	/**
+	 * Explored objects indexed by their classes.
+	 */
+	private final Map<Class<?>, Set<Object>> classIndex;
+	
+	/**
+	 * Parent links of explored objects (roots have no link) or <code>null</code> if not recorded. Links are resolved 
+	 * sequentially after the walk, see {@link #linkParents(Collection)}.
+	 */
+	final Map<Object, ParentLink> parents;
+	
+	/**
+	 * <code>true</code> while a pattern without projections is explored i.e. reached objects are widened 
+	 * to all basic properties.
+	 */
+	private volatile boolean widening;
+	
+	/**
+	 * Objects explored with all basic properties before the current pattern with projections (or <code>null</code>), 
+	 * projections of these objects are ignored.
+	 */
+	private volatile Set<Object> unprojected;
+	
+	/**
+	 * Executor of the concurrent exploration or <code>null</code>.
+	 */
+	private final ExecutorService executor;
 	
-	private JpaExplorer(PropertyFilter propertyFilter) {
+	private final int splitThreshold;
+	
+	private final int parallelism;
+	
+	private JpaExplorer(PropertyFilter propertyFilter, boolean recordingParents) {
 		this.propertyFilter = propertyFilter;
+		this.entities = new HashMap<Object, Set<String>>();
+		this.projections = new HashMap<Object, Set<String>>();
+		this.classIndex = new HashMap<Class<?>, Set<Object>>();
+		this.parents = recordingParents ? new HashMap<Object, ParentLink>() : null;
+		this.base = null;
+		this.executor = null;
+		this.splitThreshold = Integer.MAX_VALUE;
+		this.parallelism = 1;
 	}
 	
-	private static final List<String> mapEntryProperties = unmodifiableList(asList("key", "value"));
+	private JpaExplorer(CloneOptions options) {
+		this.propertyFilter = options.getPropertyFilter();
+		this.entities = new ConcurrentHashMap<Object, Set<String>>(16, .75f, options.getParallelism());
+		this.projections = new ConcurrentHashMap<Object, Set<String>>(16, .75f, options.getParallelism());
+		this.classIndex = new ConcurrentHashMap<Class<?>, Set<Object>>(16, .75f, options.getParallelism());
+		this.parents = options.isRecordingParents() ? new HashMap<Object, ParentLink>() : null;
+		this.base = null;
+		this.executor = options.getExecutor();
+		this.splitThreshold = options.getSplitThreshold();
+		this.parallelism = options.getParallelism();
+	}
+	
+	/**
+	 * Creates the extension of the explorer with the same options, the explorer is shared (not copied) 
+	 * except projections.
+	 */
+	private JpaExplorer(JpaExplorer base) {
+		this.propertyFilter = base.propertyFilter;
+		this.base = base;
+		this.executor = base.executor;
+		this.splitThreshold = base.splitThreshold;
+		this.parallelism = base.parallelism;
+		if (executor == null) {
+			this.entities = new HashMap<Object, Set<String>>();
+			this.projections = new HashMap<Object, Set<String>>(base.projections);
+			this.classIndex = new HashMap<Class<?>, Set<Object>>();
+		} else {
+			this.entities = new ConcurrentHashMap<Object, Set<String>>(16, .75f, parallelism);
+			this.projections = new ConcurrentHashMap<Object, Set<String>>(base.projections);
+			this.classIndex = new ConcurrentHashMap<Class<?>, Set<Object>>(16, .75f, parallelism);
+		}
+		this.parents = base.parents == null ? null : new HashMap<Object, ParentLink>();
+	}
+	
+	@Override
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+	
+	@Override
+	public int getSplitThreshold() {
+		return splitThreshold;
+	}
+	
+	@Override
+	public int getParallelism() {
+		return parallelism;
+	}
+	
+	static final List<String> mapEntryProperties = unmodifiableList(asList("key", "value"));
 	
 	@Override
 	public Collection<String> getProperties(Object object) {
@@ -45,26 +160,87 @@ public final class JpaExplorer implements EntityExplorer {
 		return info == null ? Collections.<String>emptyList() : info.getRelations();
 	}
 
+	@Override
+	public Collection<String> getMatchedProperties(Object object, WildcardPattern pattern) {
+		if (object == null) {
+			return Collections.emptyList();
+		}
+		if (object instanceof Entry) {
+			return pattern.match(mapEntryProperties);
+		}
+		JpaClassInfo info = JpaClassInfo.get(object.getClass());
+		return info == null ? Collections.<String>emptyList() : info.getMatchedRelations(pattern);
+	}
+
 	@Override
 	@SuppressWarnings({ "rawtypes" })
 	public final Collection<?> explore(Object entity, String property) {
-		if (entity == null || property == null) {
+		if (entity instanceof Entry) {
+			return Collections.singleton(getEntryValue((Entry) entity, property));
+		}
+		final Object value = exploreValue(entity, property);
+		if (value == null) {
 			return null;
 		}
-		
+		if (value instanceof Collection) {
+			return (Collection) value;
+		}
+		if (value instanceof Map) {
+			return ((Map) value).entrySet();
+		}
+		return Collections.singleton(value);
+	}
+
+	@Override
+	@SuppressWarnings({ "rawtypes" })
+	public final void explore(Object entity, String property, EntitySink sink) {
 		if (entity instanceof Entry) {
-			Entry entry = (Entry) entity;
-			// handle Map.Entry#getKey() and Map.Entry#getValue()
-			if ("key".equals(property)) {
-				return Collections.singleton(entry.getKey());
-			} else if ("value".equals(property)) {
-				return Collections.singleton(entry.getValue());
-			} else {
-				throw new IllegalArgumentException("Map.Entry does not have property: " + property);
+			Object value = getEntryValue((Entry) entity, property);
+			if (value != null) {
+				sink.push(value);
 			}
+			return;
 		}
-		
-		if (!propertyFilter.test(entity, property)) {
+		final Object value = exploreValue(entity, property);
+		if (value == null) {
+			return;
+		}
+		if (value instanceof Collection) {
+			for (Object o : (Collection) value) {
+				if (o != null) {
+					sink.push(o);
+				}
+			}
+		} else if (value instanceof Map) {
+			for (Object e : ((Map) value).entrySet()) {
+				sink.push(e);
+			}
+		} else {
+			sink.push(value);
+		}
+	}
+	
+	/**
+	 * Handle Map.Entry#getKey() and Map.Entry#getValue().
+	 */
+	@SuppressWarnings({ "rawtypes" })
+	private static Object getEntryValue(Entry entry, String property) {
+		if ("key".equals(property)) {
+			return entry.getKey();
+		} else if ("value".equals(property)) {
+			return entry.getValue();
+		} else {
+			throw new IllegalArgumentException("Map.Entry does not have property: " + property);
+		}
+	}
+
+	/**
+	 * Explores a relation of an entity (not a {@link Map.Entry}). Returns the value of the relation 
+	 * (an entity, a {@link Collection} or a {@link Map}) or <code>null</code>.
+	 */
+	@SuppressWarnings({ "rawtypes" })
+	private Object exploreValue(Object entity, String property) {
+		if (entity == null || property == null) {
 			return null;
 		}
 		
@@ -72,48 +248,102 @@ public final class JpaExplorer implements EntityExplorer {
 		if (classInfo == null) {
 			return null;
 		}
+		if (executor != null) {
+			// before the property filter and hashing
+			checkLoaded(entity);
+		}
+		
+		if (!classInfo.test(propertyFilter, entity, property)) {
+			return null;
+		}
 		JpaPropertyInfo propertyInfo = classInfo.getPropertyInfo(property);
-		if (propertyInfo == null || propertyInfo.isBasic()) {
-			// explored property must be a relation
+		if (propertyInfo == null || (propertyInfo.isBasic() && !propertyInfo.isLazy())) {
+			// explored property must be a relation or a lazy basic property
 			return null;
 		}
+		Set<String> explored = getExplored(entity);
+		if (explored != null && explored.contains(property)) {
+			// explored before (e.g. by a previous pattern), elements and mappedBy relations are already recorded
+			if (propertyInfo.isBasic()) {
+				return null;
+			}
+			Object value = propertyInfo.getValue(entity);
+			widen(value);
+			return value;
+		}
 		addJpaObject(entity, property);
+		if (propertyInfo.isBasic()) {
+			// the requested lazy property (e.g. @Lob) is a leaf
+			return null;
+		}
 
 		final Object value = propertyInfo.getValue(entity);
 		if (value == null) {
 			return null;
 		}
+		if (executor != null) {
+			checkLoaded(value);
+		}
 		
 		final List<String> mappedBy = propertyInfo.getMappedBy();
-		Collection<?> exploredObjects = null;
 		if (value instanceof Collection) {
 			// Collection property
-			exploredObjects = (Collection) value;
-			for (Object object : exploredObjects) {
-				addJpaObject(object);
+			for (Object object : (Collection) value) {
+				addReached(object);
 			}
 			// handle mappedBy
-			handleMappedBy(exploredObjects, mappedBy);
+			handleMappedBy((Collection) value, mappedBy);
 		} else if (value instanceof Map) {
 			// Map property
 			Map map = (Map) value;
-			exploredObjects = map.entrySet();
-			for (Object e : exploredObjects) {
+			for (Object e : map.entrySet()) {
 				Entry entry = (Entry) e;
-				addJpaObject(entry.getKey());
-				addJpaObject(entry.getValue());
+				addReached(entry.getKey());
+				addReached(entry.getValue());
 			}
 			// handle mappedBy
 			handleMappedBy(map.values(), mappedBy);
 		} else {
 			// singular property
-			addJpaObject(value);
-			exploredObjects = Collections.singleton(value);
+			addReached(value);
 			// handle mappedBy
-			handleMappedBy(exploredObjects, mappedBy);
+			if (mappedBy != null && !mappedBy.isEmpty()) {
+				handleMappedBy(value, mappedBy, 0);
+			}
 		}
+		widen(value);
 		
-		return exploredObjects;
+		return value;
+	}
+	
+	/**
+	 * Removes projections of objects reached by a pattern without projections, i.e. an object reached by 
+	 * a projected path and by an unprojected path has all basic properties.
+	 */
+	@SuppressWarnings({ "rawtypes" })
+	private void widen(Object value) {
+		if (!widening || value == null || projections.isEmpty()) {
+			return;
+		}
+		if (value instanceof Collection) {
+			for (Object object : (Collection) value) {
+				if (object != null) {
+					projections.remove(object);
+				}
+			}
+		} else if (value instanceof Map) {
+			for (Object e : ((Map) value).entrySet()) {
+				Entry entry = (Entry) e;
+				if (entry.getKey() != null) {
+					projections.remove(entry.getKey());
+				}
+				if (entry.getValue() != null) {
+					projections.remove(entry.getValue());
+				}
+			}
+		} else {
+			projections.remove(value);
+		}
 	}
 	
 	private void handleMappedBy(Collection<?> objects, List<String> mappedBy) {
@@ -125,50 +355,270 @@ public final class JpaExplorer implements EntityExplorer {
 		}
 	}
 	
+	@SuppressWarnings({ "rawtypes" })
 	private void handleMappedBy(Object o, List<String> mappedBy, int idx) {
-		Collection<?> explored = explore(o, mappedBy.get(idx));
+		Object explored = exploreValue(o, mappedBy.get(idx));
 		idx++;
-		if (explored != null && idx < mappedBy.size()) {
-			for (Object e : explored) {
+		if (explored == null || idx >= mappedBy.size()) {
+			return;
+		}
+		if (explored instanceof Collection) {
+			for (Object e : (Collection) explored) {
 				handleMappedBy(e, mappedBy, idx);
 			}
+		} else if (explored instanceof Map) {
+			for (Object e : ((Map) explored).values()) {
+				handleMappedBy(e, mappedBy, idx);
+			}
+		} else {
+			handleMappedBy(explored, mappedBy, idx);
+		}
+	}
+	
+	/**
+	 * The concurrent exploration must not trigger the lazy loading.
+	 */
+	private static void checkLoaded(Object object) {
+		if (!LoadStates.isLoaded(object)) {
+			throw new IllegalStateException("Concurrent exploration refused, the object is not loaded: " + object);
+		}
+	}
+	
+	@Override
+	public void project(Object entity, Set<String> properties) {
+		if (entity == null || JpaClassInfo.getJpaClass(entity.getClass()) == null) {
+			return;
+		}
+		Set<Object> full = unprojected;
+		if (full != null && full.contains(entity) && !projections.containsKey(entity)) {
+			// reached before by an unprojected path
+			return;
+		}
+		addJpaObject(entity);
+		if (executor == null) {
+			projections.put(entity, union(projections.get(entity), properties));
+			return;
+		}
+		ConcurrentMap<Object, Set<String>> concurrentProjections = (ConcurrentMap<Object, Set<String>>) projections;
+		Set<String> previous = concurrentProjections.putIfAbsent(entity, properties);
+		while (previous != null && !concurrentProjections.replace(entity, previous, union(previous, properties))) {
+			previous = concurrentProjections.get(entity);
+		}
+	}
+	
+	/**
+	 * Returns the (unmodifiable) union of projections.
+	 */
+	private static Set<String> union(Set<String> previous, Set<String> properties) {
+		if (previous == null || previous.containsAll(properties)) {
+			return previous == null ? properties : previous;
 		}
+		Set<String> union = new TreeSet<String>(previous);
+		union.addAll(properties);
+		return Collections.unmodifiableSet(union);
+	}
+	
+	/**
+	 * Returns basic properties of an explored object restricted by its projection.
+	 */
+	List<String> getBaseProperties(Object object, JpaClassInfo classInfo) {
+		Set<String> projection = projections.get(object);
+		return projection == null ? classInfo.getEagerBaseProperties() : classInfo.getBaseProperties(projection);
 	}
 	
 	private void addJpaObject(Object object) {
-		if (object != null && JpaClassInfo.getJpaClass(object.getClass()) != null) {
-			if (!entities.containsKey(object)) {
-				entities.put(object, new HashSet<String>());
+		if (object != null && JpaClassInfo.getJpaClass(object.getClass()) != null && getExplored(object) == null) {
+			getExploredProperties(object);
+		}
+	}
+	
+	/**
+	 * Adds an object reached by a relation, the concurrent exploration checks its load state before hashing.
+	 */
+	private void addReached(Object object) {
+		if (object == null || JpaClassInfo.getJpaClass(object.getClass()) == null) {
+			return;
+		}
+		if (executor != null) {
+			checkLoaded(object);
+		}
+		if (getExplored(object) == null) {
+			getExploredProperties(object);
+		}
+	}
+	
+	/**
+	 * Records parent links of objects without a link by a breadth first walk of explored relations from roots, 
+	 * i.e. the link of a shortest path (ties are resolved by the order of roots, relations and elements). 
+	 * The walk is sequential, so the concurrent exploration records the same links as the sequential one.
+	 */
+	@SuppressWarnings({ "rawtypes" })
+	private void linkParents(Collection<?> roots) {
+		Set<Object> visited = new HashSet<Object>();
+		ArrayDeque<Object> queue = new ArrayDeque<Object>();
+		for (Object root : roots) {
+			if (root != null && getExplored(root) != null && visited.add(root)) {
+				queue.addLast(root);
 			}
 		}
+		while (!queue.isEmpty()) {
+			Object parent = queue.removeFirst();
+			JpaClassInfo classInfo = JpaClassInfo.get(parent.getClass());
+			Set<String> explored = getExplored(parent);
+			for (String property : classInfo.getRelations()) {
+				if (!explored.contains(property)) {
+					continue;
+				}
+				Object value = classInfo.getPropertyInfo(property).getValue(parent);
+				if (value instanceof Collection) {
+					for (Object object : (Collection) value) {
+						link(object, parent, property, visited, queue);
+					}
+				} else if (value instanceof Map) {
+					for (Object e : ((Map) value).entrySet()) {
+						Entry entry = (Entry) e;
+						link(entry.getKey(), parent, property, visited, queue);
+						link(entry.getValue(), parent, property, visited, queue);
+					}
+				} else {
+					link(value, parent, property, visited, queue);
+				}
+			}
+		}
+	}
+	
+	private void link(Object object, Object parent, String property, Set<Object> visited, ArrayDeque<Object> queue) {
+		if (object == null || getExplored(object) == null || !visited.add(object)) {
+			return;
+		}
+		if (getParentLink(object) == null) {
+			parents.put(object, new ParentLink(parent, property));
+		}
+		queue.addLast(object);
 	}
 	
 	private void addJpaObject(Object object, String property) {
 		if (object != null && JpaClassInfo.getJpaClass(object.getClass()) != null) {
-			Set<String> properties = entities.get(object);
-			if (properties == null) {
-				properties = new HashSet<String>();
-				entities.put(object, properties);
+			getExploredProperties(object).add(property);
+		}
+	}
+	
+	/**
+	 * Returns explored properties of a JPA object or <code>null</code>, extended explorers are searched too.
+	 */
+	Set<String> getExplored(Object object) {
+		Set<String> properties = entities.get(object);
+		return properties != null || base == null ? properties : base.getExplored(object);
+	}
+	
+	/**
+	 * Returns the parent link of an explored object or <code>null</code>, extended explorers are searched too.
+	 */
+	ParentLink getParentLink(Object object) {
+		ParentLink link = parents.get(object);
+		return link != null || base == null ? link : base.getParentLink(object);
+	}
+	
+	/**
+	 * Returns modifiable explored properties of a JPA object (created on demand), properties of an object explored 
+	 * by the extended explorer are copied on the first modification.
+	 */
+	private Set<String> getExploredProperties(Object object) {
+		Set<String> properties = entities.get(object);
+		if (properties != null) {
+			return properties;
+		}
+		Set<String> extended = base == null ? null : base.getExplored(object);
+		if (executor == null) {
+			properties = extended == null ? new HashSet<String>() : new HashSet<String>(extended);
+			entities.put(object, properties);
+			if (extended == null) {
+				getClassIndex(object.getClass()).add(object);
 			}
-			properties.add(property);
+			return properties;
 		}
+		properties = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(4));
+		if (extended != null) {
+			properties.addAll(extended);
+		}
+		Set<String> previous = ((ConcurrentMap<Object, Set<String>>) entities).putIfAbsent(object, properties);
+		if (previous != null) {
+			return previous;
+		}
+		if (extended == null) {
+			getClassIndex(object.getClass()).add(object);
+		}
+		return properties;
 	}
 	
 	/**
-	 * Returns all explored entities of the given class.
+	 * Returns the index of explored objects of the class (created on demand).
+	 */
+	private Set<Object> getClassIndex(Class<?> clazz) {
+		Set<Object> index = classIndex.get(clazz);
+		if (index != null) {
+			return index;
+		}
+		if (executor == null) {
+			index = new HashSet<Object>();
+			classIndex.put(clazz, index);
+			return index;
+		}
+		index = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+		Set<Object> previous = ((ConcurrentMap<Class<?>, Set<Object>>) classIndex).putIfAbsent(clazz, index);
+		return previous == null ? index : previous;
+	}
+	
+	/**
+	 * Returns all explored entities of the given class, the result is collected from the class index 
+	 * (i.e. explored entities are not scanned).
 	 * 
 	 * @param clazz the entity class
 	 * @return a set of explored entities of the given class
 	 */
 	public <T> Set<T> getEntities(Class<T> clazz) {
-		Set<T> set = new HashSet<T>();
-		for (Object entity : entities.keySet()) {
-			if (clazz.isInstance(entity)) {
-				set.add(clazz.cast(entity));
+		Set<T> set = base == null ? new HashSet<T>() : base.getEntities(clazz);
+		for (Entry<Class<?>, Set<Object>> entry : classIndex.entrySet()) {
+			if (clazz.isAssignableFrom(entry.getKey())) {
+				for (Object entity : entry.getValue()) {
+					set.add(clazz.cast(entity));
+				}
 			}
 		}
 		return set;
 	}
+	
+	/**
+	 * Returns an unmodifiable set of explored objects of the given class, the index of a single matching 
+	 * class is returned without a copy.
+	 */
+	@SuppressWarnings("unchecked")
+	<T> Set<T> getIndexedEntities(Class<T> clazz) {
+		Set<Object> single = null;
+		int matches = 0;
+		for (Entry<Class<?>, Set<Object>> entry : classIndex.entrySet()) {
+			if (clazz.isAssignableFrom(entry.getKey())) {
+				single = entry.getValue();
+				matches++;
+			}
+		}
+		if (matches == 0) {
+			return base == null ? Collections.<T>emptySet() : base.getIndexedEntities(clazz);
+		}
+		return Collections.unmodifiableSet(matches == 1 && base == null ? (Set<T>) single : getEntities(clazz));
+	}
+	
+	/**
+	 * Returns classes of explored objects (e.g. proxy classes).
+	 */
+	Set<Class<?>> getClasses() {
+		if (base == null) {
+			return Collections.unmodifiableSet(classIndex.keySet());
+		}
+		Set<Class<?>> classes = new HashSet<Class<?>>(base.getClasses());
+		classes.addAll(classIndex.keySet());
+		return Collections.unmodifiableSet(classes);
+	}
 
 	/**
 	 * Explores the passed JPA entity. The explored relations are specified by string patters. 
@@ -199,17 +649,109 @@ public final class JpaExplorer implements EntityExplorer {
 	 * For description of patterns see the {@link GraphExplorer}.
 	 */
 	public static JpaExplorer doExplore(Collection<?> collection, PropertyFilter propertyFilter, String... patterns) {
-		JpaExplorer jpaExplorer = new JpaExplorer(propertyFilter);
+		JpaExplorer jpaExplorer = new JpaExplorer(propertyFilter, false);
+		for (Object root : collection) {
+			jpaExplorer.addJpaObject(root);
+		}
+		jpaExplorer.explore(collection, patterns);
+		return jpaExplorer;
+	}
+
+	/**
+	 * Explores a collection of JPA entities with the passed options. If the concurrent exploration is enabled 
+	 * then the graph is explored by the executor i.e. large frontiers are split and explored in parallel, 
+	 * see {@link CloneOptions#setSplitThreshold(int)}. The concurrent exploration is intended for 
+	 * <b>detached graphs</b>, it is refused if an explored object is not loaded. The property filter must 
+	 * be thread safe. For description of patterns see the {@link GraphExplorer}.
+	 */
+	public static JpaExplorer doExplore(Collection<?> collection, CloneOptions options, String... patterns) {
+		if (!options.isConcurrentExploration()) {
+			JpaExplorer jpaExplorer = new JpaExplorer(options.getPropertyFilter(), options.isRecordingParents());
+			for (Object root : collection) {
+				jpaExplorer.addJpaObject(root);
+			}
+			jpaExplorer.explore(collection, patterns);
+			return jpaExplorer;
+		}
+		JpaExplorer jpaExplorer = new JpaExplorer(options);
 		for (Object root : collection) {
+			if (root != null) {
+				checkLoaded(root);
+			}
 			jpaExplorer.addJpaObject(root);
 		}
+		jpaExplorer.explore(collection, patterns);
+		return jpaExplorer;
+	}
+	
+	/**
+	 * Explores patterns from explored roots (concurrently if the explorer has an executor). Patterns are evaluated 
+	 * by sets i.e. an object reached by several paths is explored once per step, see 
+	 * {@link GraphExplorer#explore(Collection, sk.nociar.jpacloner.graphs.EntityExplorer)}. Relations explored 
+	 * before are not recorded again i.e. only newly reached objects are added. An object reached by a pattern 
+	 * without projections has all basic properties, projections of other patterns do not narrow it (within 
+	 * a single pattern with projections the projection wins).
+	 */
+	void explore(Collection<?> roots, String... patterns) {
+		if (patterns == null) {
+			return;
+		}
+		for (String pattern : patterns) {
+			GraphExplorer graphExplorer = GraphExplorer.get(pattern);
+			boolean projecting = pattern.indexOf('{') >= 0;
+			widening = !projecting;
+			unprojected = projecting ? getUnprojected() : null;
+			try {
+				graphExplorer.explore(roots, this);
+			} finally {
+				widening = false;
+				unprojected = null;
+			}
+		}
+		if (parents != null) {
+			linkParents(roots);
+		}
+	}
+	
+	/**
+	 * Returns explored objects without projections (i.e. with all basic properties).
+	 */
+	private Set<Object> getUnprojected() {
+		Set<Object> full = new HashSet<Object>();
+		for (JpaExplorer explorer = this; explorer != null; explorer = explorer.base) {
+			full.addAll(explorer.entities.keySet());
+		}
+		full.removeAll(projections.keySet());
+		return full;
+	}
+	
+	/**
+	 * Returns a new explorer which extends this explorer with the same options, this explorer is shared and 
+	 * it must not be modified anymore. The extension records only objects which are newly reached or have newly 
+	 * explored relations (properties are copied on the first modification), projections are copied. 
+	 */
+	JpaExplorer extend() {
+		return new JpaExplorer(this);
+	}
+
+	/**
+	 * Walks the patterns statically from the root class, no entity is touched. The explanation 
+	 * reports reachable classes, relations of each class, unmatched wildcards, unbounded cycles and 
+	 * the estimated query fan-out, see {@link PatternExplanation}. 
+	 * For description of patterns see the {@link GraphExplorer}.
+	 */
+	public static PatternExplanation explain(Class<?> rootClass, String... patterns) {
+		PatternExplanation explanation = new PatternExplanation(JpaTypeExplorer.INSTANCE);
+		Class<?> jpaClass = JpaClassInfo.getJpaClass(rootClass);
+		if (jpaClass == null) {
+			throw new IllegalArgumentException("Not a JPA class: " + rootClass);
+		}
 		if (patterns != null) {
 			for (String pattern : patterns) {
-				GraphExplorer graphExplorer = GraphExplorer.get(pattern);
-				graphExplorer.explore(collection, jpaExplorer);
+				GraphExplorer.get(pattern).explain(Collections.singleton(jpaClass), explanation);
 			}
 		}
-		return jpaExplorer;
+		return explanation;
 	}
 
 }
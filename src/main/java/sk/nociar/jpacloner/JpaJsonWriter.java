@@ -0,0 +1,223 @@
+package sk.nociar.jpacloner;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.Entity;
+
+import sk.nociar.jpacloner.graphs.GraphExplorer;
+
+/**
+ * Streams an explored subgraph directly to JSON, i.e. no clones are created. Values are read by
+ * {@link JpaPropertyInfo} accessors, the output contains the same properties as the clone would
+ * (basic properties restricted by the filter and projections, explored relations and requested lazy properties).
+ * Each entity is written once with the "@id" (a sequence number), repeated (shared or cyclic) entities are
+ * written as back-references <code>{"@ref":n}</code>. Embeddables are written inline. Example:
+ * <pre>
+ * JpaJsonWriter.write(company, writer, "departments+.(boss|employees).address");
+ * {"@id":1,"@type":"Company","id":7,"name":"ACME","departments":[{"@id":2,"@type":"Department", ...}, {"@ref":2}]}</pre>
+ * Collections and arrays are written as JSON arrays, maps as arrays of <code>{"key":k,"value":v}</code>,
+ * dates as milliseconds, numbers and booleans as JSON literals and other values as strings.
+ * Please note that the nesting depth of the output follows the paths of patterns.
+ *
+ * @author Miroslav Nociar
+ */
+public final class JpaJsonWriter {
+
+	private final JpaExplorer explorer;
+
+	private final Appendable out;
+
+	/**
+	 * Sequence numbers of written entities.
+	 */
+	private final Map<Object, Integer> written = new HashMap<Object, Integer>();
+
+	private JpaJsonWriter(JpaExplorer explorer, Appendable out) {
+		this.explorer = explorer;
+		this.out = out;
+	}
+
+	/**
+	 * Explores the root (an entity or a collection of entities) by patterns and writes the subgraph. For description of patterns see the {@link GraphExplorer}.
+	 */
+	public static void write(Object root, Appendable out, String... patterns) throws IOException {
+		write(root, PropertyFilters.getDefaultFilter(), out, patterns);
+	}
+
+	/**
+	 * Explores the root (an entity or a collection of entities) by patterns and writes the filtered subgraph. 
+	 * For description of patterns see the {@link GraphExplorer}.
+	 */
+	public static void write(Object root, PropertyFilter propertyFilter, Appendable out, String... patterns) throws IOException {
+		Collection<?> roots = root instanceof Collection ? (Collection<?>) root : Collections.singleton(root);
+		write(JpaExplorer.doExplore(roots, propertyFilter, patterns), root, out);
+	}
+
+	/**
+	 * Writes the root of the explored subgraph, the explorer must contain the root (e.g. a root of the exploration).
+	 * A collection of roots is written as a JSON array with shared back-references.
+	 */
+	public static void write(JpaExplorer explorer, Object root, Appendable out) throws IOException {
+		new JpaJsonWriter(explorer, out).writeValue(root);
+	}
+
+	/**
+	 * Explores the root by patterns and returns the JSON string. For description of patterns see the {@link GraphExplorer}.
+	 */
+	public static String toJson(Object root, String... patterns) {
+		StringBuilder sb = new StringBuilder();
+		try {
+			write(root, sb, patterns);
+		} catch (IOException e) {
+			// not thrown by the StringBuilder
+			throw new IllegalStateException(e);
+		}
+		return sb.toString();
+	}
+
+	@SuppressWarnings("rawtypes")
+	private void writeValue(Object value) throws IOException {
+		if (value == null) {
+			out.append("null");
+		} else if (value instanceof Collection) {
+			out.append('[');
+			boolean first = true;
+			for (Object element : (Collection) value) {
+				first = comma(first);
+				writeValue(element);
+			}
+			out.append(']');
+		} else if (value instanceof Map) {
+			out.append('[');
+			boolean first = true;
+			for (Object o : ((Map) value).entrySet()) {
+				Map.Entry entry = (Map.Entry) o;
+				first = comma(first);
+				out.append("{\"key\":");
+				writeValue(entry.getKey());
+				out.append(",\"value\":");
+				writeValue(entry.getValue());
+				out.append('}');
+			}
+			out.append(']');
+		} else if (value.getClass().isArray()) {
+			out.append('[');
+			for (int i = 0, n = Array.getLength(value); i < n; i++) {
+				comma(i == 0);
+				writeValue(Array.get(value, i));
+			}
+			out.append(']');
+		} else if ((value instanceof Double && (((Double) value).isNaN() || ((Double) value).isInfinite()))
+				|| (value instanceof Float && (((Float) value).isNaN() || ((Float) value).isInfinite()))) {
+			// not a JSON number
+			writeString(value.toString());
+		} else if (value instanceof Number || value instanceof Boolean) {
+			out.append(value.toString());
+		} else if (value instanceof Date) {
+			out.append(Long.toString(((Date) value).getTime()));
+		} else {
+			JpaClassInfo classInfo = JpaClassInfo.get(value.getClass());
+			if (classInfo == null) {
+				writeString(value.toString());
+			} else {
+				writeObject(value, classInfo);
+			}
+		}
+	}
+
+	/**
+	 * Writes an entity (or a back-reference) or an embeddable.
+	 */
+	private void writeObject(Object object, JpaClassInfo classInfo) throws IOException {
+		Class<?> jpaClass = JpaClassInfo.getJpaClass(object.getClass());
+		boolean first = true;
+		if (jpaClass.getAnnotation(Entity.class) != null) {
+			Integer ref = written.get(object);
+			if (ref != null) {
+				out.append("{\"@ref\":").append(ref.toString()).append('}');
+				return;
+			}
+			ref = written.size() + 1;
+			written.put(object, ref);
+			out.append("{\"@id\":").append(ref.toString()).append(",\"@type\":");
+			writeString(jpaClass.getSimpleName());
+			first = false;
+		} else {
+			out.append('{');
+		}
+		PropertyFilter propertyFilter = explorer.propertyFilter;
+		for (String property : explorer.getBaseProperties(object, classInfo)) {
+			if (classInfo.test(propertyFilter, object, property)) {
+				first = writeProperty(first, property, classInfo.getPropertyInfo(property).getValue(object));
+			}
+		}
+		Set<String> explored = explorer.entities.get(object);
+		if (explored == null) {
+			explored = Collections.emptySet();
+		}
+		for (String property : classInfo.getLazyProperties()) {
+			if (explored.contains(property)) {
+				first = writeProperty(first, property, classInfo.getPropertyInfo(property).getValue(object));
+			}
+		}
+		for (String relation : classInfo.getRelations()) {
+			if (explored.contains(relation)) {
+				first = writeProperty(first, relation, classInfo.getPropertyInfo(relation).getValue(object));
+			}
+		}
+		out.append('}');
+	}
+
+	private boolean writeProperty(boolean first, String property, Object value) throws IOException {
+		comma(first);
+		writeString(property);
+		out.append(':');
+		writeValue(value);
+		return false;
+	}
+
+	private boolean comma(boolean first) throws IOException {
+		if (!first) {
+			out.append(',');
+		}
+		return false;
+	}
+
+	private void writeString(String s) throws IOException {
+		out.append('"');
+		for (int i = 0, n = s.length(); i < n; i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				out.append("\\\"");
+				break;
+			case '\\':
+				out.append("\\\\");
+				break;
+			case '\n':
+				out.append("\\n");
+				break;
+			case '\r':
+				out.append("\\r");
+				break;
+			case '\t':
+				out.append("\\t");
+				break;
+			default:
+				if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+					out.append(String.format("\\u%04x", (int) c));
+				} else {
+					out.append(c);
+				}
+			}
+		}
+		out.append('"');
+	}
+}
@@ -6,11 +6,21 @@ import static java.util.Collections.unmodifiableList;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
+import javax.persistence.Basic;
 import javax.persistence.ElementCollection;
 import javax.persistence.Embedded;
 import javax.persistence.EmbeddedId;
+import javax.persistence.FetchType;
+import javax.persistence.Lob;
 import javax.persistence.ManyToMany;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
@@ -29,6 +39,11 @@ public class JpaPropertyInfo {
 	private final List<String> mappedBy;
 	private final boolean isBasic;
 	private final boolean isSingular;
+	private final Class<?> type;
+	private final Class<?> targetClass;
+	private final Class<?> mapKeyClass;
+	private final boolean isBasicCollection;
+	private final boolean isLazy;
 	
 	public JpaPropertyInfo(AccessibleObject accessibleObject, PropertyReader propertyReader, PropertyWriter propertyWriter) {
 		this.accessibleObject = accessibleObject;
@@ -43,11 +58,46 @@ public class JpaPropertyInfo {
 		final EmbeddedId embeddedId = accessibleObject.getAnnotation(EmbeddedId.class);
 		final ElementCollection elementCollection = accessibleObject.getAnnotation(ElementCollection.class);
 
+		final Type genericType;
+		if (accessibleObject instanceof Field) {
+			type = ((Field) accessibleObject).getType();
+			genericType = ((Field) accessibleObject).getGenericType();
+		} else {
+			type = ((Method) accessibleObject).getReturnType();
+			genericType = ((Method) accessibleObject).getGenericReturnType();
+		}
+		// resolve the target class, the explicit target entity has precedence
+		Class<?> target = null;
+		if (manyToOne != null) {
+			target = manyToOne.targetEntity();
+		} else if (oneToOne != null) {
+			target = oneToOne.targetEntity();
+		} else if (oneToMany != null) {
+			target = oneToMany.targetEntity();
+		} else if (manyToMany != null) {
+			target = manyToMany.targetEntity();
+		} else if (elementCollection != null) {
+			target = elementCollection.targetClass();
+		}
+		if (Map.class.isAssignableFrom(type)) {
+			mapKeyClass = getTypeArgument(genericType, 0);
+			targetClass = target == null || target == void.class ? getTypeArgument(genericType, 1) : target;
+		} else if (Collection.class.isAssignableFrom(type)) {
+			mapKeyClass = null;
+			targetClass = target == null || target == void.class ? getTypeArgument(genericType, 0) : target;
+		} else {
+			mapKeyClass = null;
+			targetClass = target == null || target == void.class ? type : target;
+		}
+
 		if (allNull(manyToOne, oneToOne, oneToMany, manyToMany, embedded, embeddedId, elementCollection)) {
 			// basic field
 			isBasic = true;
 			isSingular = true;
 			mappedBy = null;
+			isBasicCollection = false;
+			Basic basic = accessibleObject.getAnnotation(Basic.class);
+			isLazy = accessibleObject.getAnnotation(Lob.class) != null || (basic != null && basic.fetch() == FetchType.LAZY);
 		} else {
 			// relation/embedded field
 			isBasic = false;
@@ -71,9 +121,39 @@ public class JpaPropertyInfo {
 			} else {
 				mappedBy = null;
 			}
+			isLazy = false;
+			isBasicCollection = elementCollection != null && isBasicType(targetClass) && 
+					(mapKeyClass == null || isBasicType(mapKeyClass));
 		}		
 	}
 	
+	/**
+	 * Returns <code>true</code> for resolved concrete types which are not JPA classes.
+	 */
+	private static boolean isBasicType(Class<?> c) {
+		if (c == Object.class || c.isInterface() || Modifier.isAbstract(c.getModifiers())) {
+			return false;
+		}
+		return JpaClassInfo.getJpaClass(c) == null;
+	}
+	
+	private static Class<?> getTypeArgument(Type genericType, int idx) {
+		if (genericType instanceof ParameterizedType) {
+			Type[] arguments = ((ParameterizedType) genericType).getActualTypeArguments();
+			if (idx < arguments.length) {
+				Type argument = arguments[idx];
+				if (argument instanceof ParameterizedType) {
+					argument = ((ParameterizedType) argument).getRawType();
+				}
+				if (argument instanceof Class) {
+					return (Class<?>) argument;
+				}
+			}
+		}
+		// raw type, type variable or wildcard
+		return Object.class;
+	}
+	
 	private boolean allNull(Annotation... annotations) {
 		for (Annotation a : annotations) {
 			if (a != null) {
@@ -106,4 +186,43 @@ public class JpaPropertyInfo {
 	public boolean isSingular() {
 		return isSingular;
 	}
+
+	/**
+	 * Returns <code>true</code> for an {@link ElementCollection} of basic values (e.g. Integer, String), 
+	 * i.e. the elements (keys and values of a {@link Map}) are not JPA objects.
+	 */
+	public boolean isBasicCollection() {
+		return isBasicCollection;
+	}
+
+	/**
+	 * Returns <code>true</code> for a basic property annotated by {@link Lob} or {@link Basic} with the 
+	 * {@link FetchType#LAZY}. Lazy properties are not copied unless requested explicitly by a pattern.
+	 */
+	public boolean isLazy() {
+		return isLazy;
+	}
+
+	/**
+	 * Returns the declared type of the property.
+	 */
+	public Class<?> getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the static target type of the property: the declared type of a singular property, 
+	 * the element type of a {@link Collection} or the value type of a {@link Map}. 
+	 * Returns {@link Object} if the type cannot be resolved.
+	 */
+	public Class<?> getTargetClass() {
+		return targetClass;
+	}
+
+	/**
+	 * Returns the key type of a {@link Map} property, <code>null</code> for other properties.
+	 */
+	public Class<?> getMapKeyClass() {
+		return mapKeyClass;
+	}
 }
@@ -0,0 +1,825 @@
+package sk.nociar.jpacloner;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.persistence.Entity;
+
+import sk.nociar.jpacloner.graphs.GraphExplorer;
+
+/**
+ * Binary snapshot of an explored subgraph (e.g. a clone of reference data) in a file. The snapshot is written
+ * by the {@link #write(Object, File, String...)} and read by a memory mapped {@link JpaSnapshot}, see {@link #open(File)}.
+ * Entities are materialized lazily i.e. only entities reachable from the requested ones are instantiated,
+ * see {@link #getRoots()}, {@link #get(int)} and {@link #find(Class, Object)}. The file contains:
+ * <ul>
+ * <li>a table of interned strings (class names, property names and string values),</li>
+ * <li>per class property layouts taken from the {@link JpaClassInfo},</li>
+ * <li>entity records with reference ids (shared and cyclic entities are written once), embeddables are inline,</li>
+ * <li>an offset table of entity records and reference ids of roots.</li>
+ * </ul>
+ * Supported values are primitive wrappers, strings, byte arrays, enums, dates ({@link java.util.Date}, 
+ * {@link java.sql.Date}, {@link java.sql.Time}, {@link java.sql.Timestamp}), {@link BigDecimal} and {@link BigInteger}, 
+ * other values are rejected (the Java serialization is not used). Sorted collections are restored with the natural 
+ * ordering. The file size is limited to 2GB.
+ * The snapshot is thread safe.
+ *
+ * @author Miroslav Nociar
+ */
+public final class JpaSnapshot implements Closeable {
+
+	private static final int MAGIC = 0x4A504153;
+	private static final int VERSION = 2;
+	/** Magic, version and offsets of strings, classes, entity offsets and roots */
+	private static final int HEADER_SIZE = 40;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final byte NULL = 0;
+	private static final byte ABSENT = 1;
+	private static final byte STRING = 2;
+	private static final byte INT = 3;
+	private static final byte LONG = 4;
+	private static final byte DOUBLE = 5;
+	private static final byte FLOAT = 6;
+	private static final byte TRUE = 7;
+	private static final byte FALSE = 8;
+	private static final byte SHORT = 9;
+	private static final byte BYTE = 10;
+	private static final byte CHAR = 11;
+	private static final byte BYTES = 12;
+	private static final byte ENUM = 13;
+	private static final byte REF = 15;
+	private static final byte EMBEDDED = 16;
+	private static final byte LIST = 17;
+	private static final byte SET = 18;
+	private static final byte SORTED_SET = 19;
+	private static final byte MAP = 20;
+	private static final byte SORTED_MAP = 21;
+	private static final byte DATE = 22;
+	private static final byte SQL_DATE = 23;
+	private static final byte SQL_TIME = 24;
+	private static final byte TIMESTAMP = 25;
+	private static final byte BIG_INTEGER = 26;
+	private static final byte BIG_DECIMAL = 27;
+
+	private final RandomAccessFile file;
+	private final ByteBuffer buffer;
+	private final int[] stringOffsets;
+	private final String[] strings;
+	private final Class<?>[] classes;
+	private final JpaClassInfo[] classInfos;
+	/** Property layouts of classes, <code>null</code> for properties unknown to the current class */
+	private final JpaPropertyInfo[][] layouts;
+	private final int entitiesPos;
+	private final int[] roots;
+	private final Object[] entities;
+	private int materialized = 0;
+	/** Indices of entities with unresolved relations */
+	private final LinkedList<Integer> pending = new LinkedList<Integer>();
+	/** Collections which are filled after singular relations */
+	private final LinkedList<Object[]> pendingCollections = new LinkedList<Object[]>();
+	/** Index of ids, created on demand */
+	private Map<Class<?>, Map<Object, Integer>> ids = null;
+
+	private JpaSnapshot(RandomAccessFile file) throws IOException {
+		this.file = file;
+		long length = file.length();
+		if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+			throw corrupt("invalid file length " + length);
+		}
+		this.buffer = file.getChannel().map(MapMode.READ_ONLY, 0, length);
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IllegalStateException("Not a snapshot (or unsupported version)");
+		}
+		ByteBuffer in = at(offset(8));
+		// strings
+		stringOffsets = new int[count(in, 4)];
+		strings = new String[stringOffsets.length];
+		for (int i = 0; i < stringOffsets.length; i++) {
+			stringOffsets[i] = in.position();
+			in.position(in.position() + 4 + count(in, 1));
+		}
+		// classes
+		in = at(offset(16));
+		classes = new Class<?>[count(in, 8)];
+		classInfos = new JpaClassInfo[classes.length];
+		layouts = new JpaPropertyInfo[classes.length][];
+		for (int i = 0; i < classes.length; i++) {
+			String className = getString(in.getInt());
+			classes[i] = loadClass(className);
+			classInfos[i] = JpaClassInfo.get(classes[i]);
+			if (classInfos[i] == null) {
+				throw new IllegalStateException("Not a JPA class: " + className);
+			}
+			layouts[i] = new JpaPropertyInfo[count(in, 4)];
+			for (int j = 0; j < layouts[i].length; j++) {
+				layouts[i][j] = classInfos[i].getPropertyInfo(getString(in.getInt()));
+			}
+		}
+		// entities & roots
+		entitiesPos = offset(24);
+		entities = new Object[count(at(entitiesPos), 4)];
+		in = at(offset(32));
+		roots = new int[count(in, 4)];
+		for (int i = 0; i < roots.length; i++) {
+			roots[i] = in.getInt();
+			if (roots[i] < 0 || roots[i] >= entities.length) {
+				throw corrupt("invalid root " + roots[i]);
+			}
+		}
+	}
+
+	private static IllegalStateException corrupt(String message) {
+		return new IllegalStateException("Corrupt snapshot: " + message);
+	}
+
+	/**
+	 * Returns the section offset stored in the header at the position, the section must start with a count.
+	 */
+	private int offset(int position) {
+		long offset = buffer.getLong(position);
+		if (offset < HEADER_SIZE || offset > buffer.limit() - 4) {
+			throw corrupt("invalid offset " + offset);
+		}
+		return (int) offset;
+	}
+
+	/**
+	 * Reads a count of items, the items (at least <code>itemSize</code> bytes each) must fit in the file.
+	 */
+	private static int count(ByteBuffer in, int itemSize) {
+		int count = in.getInt();
+		if (count < 0 || (long) count * itemSize > in.remaining()) {
+			throw corrupt("invalid count " + count + " at " + (in.position() - 4));
+		}
+		return count;
+	}
+
+	/**
+	 * Explores the root (an entity or a collection of entities) by patterns and writes the snapshot to the file.
+	 * For description of patterns see the {@link GraphExplorer}.
+	 */
+	public static void write(Object root, File file, String... patterns) throws IOException {
+		write(root, PropertyFilters.getDefaultFilter(), file, patterns);
+	}
+
+	/**
+	 * Explores the root (an entity or a collection of entities) by patterns and writes the filtered snapshot to the file.
+	 * For description of patterns see the {@link GraphExplorer}.
+	 */
+	public static void write(Object root, PropertyFilter propertyFilter, File file, String... patterns) throws IOException {
+		Collection<?> roots = root instanceof Collection ? (Collection<?>) root : Collections.singleton(root);
+		write(JpaExplorer.doExplore(roots, propertyFilter, patterns), roots, file);
+	}
+
+	/**
+	 * Writes the explored subgraph to the file, roots must be explored entities.
+	 */
+	public static void write(JpaExplorer explorer, Collection<?> roots, File file) throws IOException {
+		new Writer(explorer).write(roots, file);
+	}
+
+	/**
+	 * Opens (maps) the snapshot file, no entity is materialized.
+	 */
+	public static JpaSnapshot open(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			return new JpaSnapshot(randomAccessFile);
+		} catch (IOException e) {
+			randomAccessFile.close();
+			throw e;
+		} catch (RuntimeException e) {
+			randomAccessFile.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the number of entities in the snapshot.
+	 */
+	public int size() {
+		return entities.length;
+	}
+
+	/**
+	 * Returns the number of materialized entities.
+	 */
+	public synchronized int getMaterialized() {
+		return materialized;
+	}
+
+	/**
+	 * Returns materialized roots of the snapshot (in the written order).
+	 */
+	public synchronized List<Object> getRoots() {
+		List<Object> list = new ArrayList<Object>(roots.length);
+		for (int root : roots) {
+			list.add(materialize(root));
+		}
+		resolve();
+		return list;
+	}
+
+	/**
+	 * Returns the materialized entity with the reference id (an index from 0 to size - 1).
+	 */
+	public synchronized Object get(int index) {
+		Object entity = materialize(index);
+		resolve();
+		return entity;
+	}
+
+	/**
+	 * Finds and materializes the entity by its class and id, returns <code>null</code> if not found.
+	 * The index of ids is created on the first call.
+	 */
+	public synchronized <T> T find(Class<T> clazz, Object id) {
+		if (ids == null) {
+			ids = new HashMap<Class<?>, Map<Object, Integer>>();
+			for (int i = 0; i < entities.length; i++) {
+				ByteBuffer in = record(i);
+				int classIdx = in.getInt();
+				JpaPropertyInfo idInfo = classInfos[classIdx].getPropertyInfo(classInfos[classIdx].getIdProperty());
+				for (JpaPropertyInfo propertyInfo : layouts[classIdx]) {
+					if (idInfo != null && propertyInfo == idInfo) {
+						if (in.get(in.position()) != ABSENT) {
+							Map<Object, Integer> classIds = ids.get(classes[classIdx]);
+							if (classIds == null) {
+								classIds = new HashMap<Object, Integer>();
+								ids.put(classes[classIdx], classIds);
+							}
+							classIds.put(readValue(in), i);
+						}
+						break;
+					}
+					skipValue(in, false);
+				}
+			}
+		}
+		for (Map.Entry<Class<?>, Map<Object, Integer>> entry : ids.entrySet()) {
+			Integer index = clazz.isAssignableFrom(entry.getKey()) ? entry.getValue().get(id) : null;
+			if (index != null) {
+				return clazz.cast(get(index));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Closes the file, materialized entities remain valid.
+	 */
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	private ByteBuffer at(int position) {
+		ByteBuffer in = buffer.duplicate();
+		in.position(position);
+		return in;
+	}
+
+	private ByteBuffer record(int index) {
+		if (index < 0 || index >= entities.length) {
+			throw corrupt("invalid reference " + index);
+		}
+		int offset = buffer.getInt(entitiesPos + 4 + 4 * index);
+		if (offset < HEADER_SIZE || offset > buffer.limit() - 4) {
+			throw corrupt("invalid record offset " + offset);
+		}
+		return at(offset);
+	}
+
+	private String getString(int idx) {
+		String s = strings[idx];
+		if (s == null) {
+			int pos = stringOffsets[idx];
+			byte[] bytes = new byte[buffer.getInt(pos)];
+			at(pos + 4).get(bytes);
+			s = new String(bytes, UTF_8);
+			strings[idx] = s;
+		}
+		return s;
+	}
+
+	private static Class<?> loadClass(String name) {
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		try {
+			return Class.forName(name, false, classLoader == null ? JpaSnapshot.class.getClassLoader() : classLoader);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("Unable to load class: " + name, e);
+		}
+	}
+
+	private Object newInstance(int classIdx) {
+		try {
+			return classInfos[classIdx].getConstructor().newInstance();
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to instantiate: " + classes[classIdx], e);
+		}
+	}
+
+	/**
+	 * Instantiates the entity with basic properties, relations are resolved later.
+	 */
+	private Object materialize(int index) {
+		Object entity = entities[index];
+		if (entity != null) {
+			return entity;
+		}
+		ByteBuffer in = record(index);
+		int classIdx = in.getInt();
+		entity = newInstance(classIdx);
+		entities[index] = entity;
+		materialized++;
+		for (JpaPropertyInfo propertyInfo : layouts[classIdx]) {
+			if (propertyInfo != null && propertyInfo.isBasic() && in.get(in.position()) != ABSENT) {
+				propertyInfo.setValue(entity, readValue(in));
+			} else {
+				skipValue(in, false);
+			}
+		}
+		pending.add(index);
+		return entity;
+	}
+
+	/**
+	 * Resolves relations of materialized entities, collections are filled after singular relations
+	 * of their elements (hash codes may depend on them).
+	 */
+	private void resolve() {
+		while (true) {
+			while (!pending.isEmpty()) {
+				int index = pending.removeFirst();
+				Object entity = entities[index];
+				ByteBuffer in = record(index);
+				for (JpaPropertyInfo propertyInfo : layouts[in.getInt()]) {
+					byte tag = in.get(in.position());
+					if (propertyInfo == null || propertyInfo.isBasic() || tag == ABSENT) {
+						skipValue(in, false);
+					} else if (tag == LIST || tag == SET || tag == SORTED_SET || tag == MAP || tag == SORTED_MAP) {
+						pendingCollections.add(new Object[] { entity, propertyInfo, in.position() });
+						skipValue(in, true);
+					} else {
+						propertyInfo.setValue(entity, readValue(in));
+					}
+				}
+			}
+			if (pendingCollections.isEmpty()) {
+				return;
+			}
+			Object[] pendingCollection = pendingCollections.removeFirst();
+			JpaPropertyInfo propertyInfo = (JpaPropertyInfo) pendingCollection[1];
+			propertyInfo.setValue(pendingCollection[0], readValue(at((Integer) pendingCollection[2])));
+		}
+	}
+
+	/**
+	 * Skips the value, referenced entities are optionally materialized.
+	 */
+	private void skipValue(ByteBuffer in, boolean materialize) {
+		byte tag = in.get();
+		switch (tag) {
+		case NULL:
+		case ABSENT:
+		case TRUE:
+		case FALSE:
+			return;
+		case BYTE:
+			in.get();
+			return;
+		case SHORT:
+		case CHAR:
+			in.getShort();
+			return;
+		case STRING:
+		case INT:
+		case FLOAT:
+			in.getInt();
+			return;
+		case LONG:
+		case DOUBLE:
+		case DATE:
+		case SQL_DATE:
+		case SQL_TIME:
+			in.getLong();
+			return;
+		case TIMESTAMP:
+			in.getLong();
+			in.getInt();
+			return;
+		case ENUM:
+			in.getInt();
+			in.getInt();
+			return;
+		case BYTES:
+		case BIG_INTEGER:
+			in.position(in.position() + 4 + in.getInt(in.position()));
+			return;
+		case BIG_DECIMAL:
+			in.getInt();
+			in.position(in.position() + 4 + in.getInt(in.position()));
+			return;
+		case REF:
+			int index = in.getInt();
+			if (materialize) {
+				materialize(index);
+			}
+			return;
+		case EMBEDDED:
+			for (int i = layouts[in.getInt()].length; i > 0; i--) {
+				skipValue(in, materialize);
+			}
+			return;
+		case LIST:
+		case SET:
+		case SORTED_SET:
+			for (int i = in.getInt(); i > 0; i--) {
+				skipValue(in, materialize);
+			}
+			return;
+		case MAP:
+		case SORTED_MAP:
+			for (int i = 2 * in.getInt(); i > 0; i--) {
+				skipValue(in, materialize);
+			}
+			return;
+		default:
+			throw new IllegalStateException("Corrupted snapshot, unknown tag: " + tag);
+		}
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private Object readValue(ByteBuffer in) {
+		byte tag = in.get();
+		switch (tag) {
+		case NULL:
+			return null;
+		case STRING:
+			return getString(in.getInt());
+		case INT:
+			return in.getInt();
+		case LONG:
+			return in.getLong();
+		case DOUBLE:
+			return in.getDouble();
+		case FLOAT:
+			return in.getFloat();
+		case TRUE:
+			return Boolean.TRUE;
+		case FALSE:
+			return Boolean.FALSE;
+		case SHORT:
+			return in.getShort();
+		case BYTE:
+			return in.get();
+		case CHAR:
+			return in.getChar();
+		case BYTES:
+			return readBytes(in);
+		case ENUM:
+			Class enumClass = loadClass(getString(in.getInt()));
+			return Enum.valueOf(enumClass, getString(in.getInt()));
+		case DATE:
+			return new Date(in.getLong());
+		case SQL_DATE:
+			return new java.sql.Date(in.getLong());
+		case SQL_TIME:
+			return new java.sql.Time(in.getLong());
+		case TIMESTAMP:
+			java.sql.Timestamp timestamp = new java.sql.Timestamp(in.getLong());
+			timestamp.setNanos(in.getInt());
+			return timestamp;
+		case BIG_INTEGER:
+			return new BigInteger(readBytes(in));
+		case BIG_DECIMAL:
+			int scale = in.getInt();
+			return new BigDecimal(new BigInteger(readBytes(in)), scale);
+		case REF:
+			return materialize(in.getInt());
+		case EMBEDDED:
+			int classIdx = in.getInt();
+			Object embeddable = newInstance(classIdx);
+			for (JpaPropertyInfo propertyInfo : layouts[classIdx]) {
+				if (propertyInfo != null && in.get(in.position()) != ABSENT) {
+					propertyInfo.setValue(embeddable, readValue(in));
+				} else {
+					skipValue(in, false);
+				}
+			}
+			return embeddable;
+		case LIST:
+		case SET:
+		case SORTED_SET:
+			int size = in.getInt();
+			Collection collection = tag == LIST ? new ArrayList(size) :
+				(tag == SET ? new LinkedHashSet(Math.max(16, (int) (size / .75f) + 1)) : new TreeSet());
+			for (int i = 0; i < size; i++) {
+				collection.add(readValue(in));
+			}
+			return collection;
+		case MAP:
+		case SORTED_MAP:
+			int entries = in.getInt();
+			Map map = tag == MAP ? new LinkedHashMap(Math.max(16, (int) (entries / .75f) + 1)) : new TreeMap();
+			for (int i = 0; i < entries; i++) {
+				Object key = readValue(in);
+				map.put(key, readValue(in));
+			}
+			return map;
+		default:
+			throw new IllegalStateException("Corrupted snapshot, unknown tag: " + tag);
+		}
+	}
+
+	private static byte[] readBytes(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Writer of the snapshot file.
+	 */
+	private static final class Writer {
+		private final JpaExplorer explorer;
+		private final Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+		private final Map<Class<?>, Integer> classes = new LinkedHashMap<Class<?>, Integer>();
+		private final List<List<String>> layouts = new ArrayList<List<String>>();
+		private final Map<Object, Integer> refs = new HashMap<Object, Integer>();
+		private DataOutputStream out;
+
+		Writer(JpaExplorer explorer) {
+			this.explorer = explorer;
+		}
+
+		/**
+		 * Writes the snapshot to a temporary file which replaces the file only on success.
+		 */
+		void write(Collection<?> roots, File file) throws IOException {
+			File temp = File.createTempFile("." + file.getName() + ".", ".tmp", file.getAbsoluteFile().getParentFile());
+			boolean success = false;
+			try {
+				writeFile(roots, temp);
+				if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+					throw new IOException("Unable to rename " + temp + " to " + file);
+				}
+				success = true;
+			} finally {
+				if (!success) {
+					temp.delete();
+				}
+			}
+		}
+
+		private void writeFile(Collection<?> roots, File file) throws IOException {
+			List<Object> list = new ArrayList<Object>();
+			for (Object o : explorer.entities.keySet()) {
+				if (isEntity(o)) {
+					refs.put(o, list.size());
+					list.add(o);
+				}
+			}
+			long[] header = new long[4];
+			int[] offsets = new int[list.size()];
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				for (int i = 0; i < header.length; i++) {
+					out.writeLong(0);
+				}
+				// entities
+				for (int i = 0; i < offsets.length; i++) {
+					offsets[i] = position();
+					writeObject(list.get(i));
+				}
+				// classes
+				header[1] = position();
+				out.writeInt(classes.size());
+				for (Map.Entry<Class<?>, Integer> entry : classes.entrySet()) {
+					out.writeInt(string(entry.getKey().getName()));
+					List<String> layout = layouts.get(entry.getValue());
+					out.writeInt(layout.size());
+					for (String property : layout) {
+						out.writeInt(string(property));
+					}
+				}
+				// strings
+				header[0] = position();
+				out.writeInt(strings.size());
+				for (String s : strings.keySet()) {
+					byte[] bytes = s.getBytes(UTF_8);
+					out.writeInt(bytes.length);
+					out.write(bytes);
+				}
+				// entity offsets
+				header[2] = position();
+				out.writeInt(offsets.length);
+				for (int offset : offsets) {
+					out.writeInt(offset);
+				}
+				// roots
+				header[3] = position();
+				out.writeInt(roots.size());
+				for (Object root : roots) {
+					Integer ref = refs.get(root);
+					if (ref == null) {
+						throw new IllegalArgumentException("The root is not an explored entity: " + root);
+					}
+					out.writeInt(ref);
+				}
+			} finally {
+				out.close();
+			}
+			RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+			try {
+				randomAccessFile.seek(8);
+				for (long position : header) {
+					randomAccessFile.writeLong(position);
+				}
+			} finally {
+				randomAccessFile.close();
+			}
+		}
+
+		private int position() {
+			if (out.size() < 0 || out.size() == Integer.MAX_VALUE) {
+				throw new IllegalStateException("The snapshot exceeds 2GB");
+			}
+			return out.size();
+		}
+
+		private static boolean isEntity(Object o) {
+			Class<?> jpaClass = JpaClassInfo.getJpaClass(o.getClass());
+			return jpaClass != null && jpaClass.getAnnotation(Entity.class) != null;
+		}
+
+		private int string(String s) {
+			Integer idx = strings.get(s);
+			if (idx == null) {
+				idx = strings.size();
+				strings.put(s, idx);
+			}
+			return idx;
+		}
+
+		/**
+		 * Returns the index of the class, the layout contains basic properties (including lazy ones) and relations.
+		 */
+		private int classIndex(Class<?> jpaClass, JpaClassInfo classInfo) {
+			Integer idx = classes.get(jpaClass);
+			if (idx == null) {
+				idx = classes.size();
+				classes.put(jpaClass, idx);
+				List<String> layout = new ArrayList<String>(classInfo.getBaseProperties());
+				layout.addAll(classInfo.getRelations());
+				layouts.add(layout);
+			}
+			return idx;
+		}
+
+		/**
+		 * Writes the class index and values of the layout, properties which would not be cloned are absent.
+		 */
+		private void writeObject(Object object) throws IOException {
+			JpaClassInfo classInfo = JpaClassInfo.get(object.getClass());
+			int classIdx = classIndex(JpaClassInfo.getJpaClass(object.getClass()), classInfo);
+			out.writeInt(classIdx);
+			Set<String> explored = explorer.entities.get(object);
+			if (explored == null) {
+				explored = Collections.emptySet();
+			}
+			List<String> baseProperties = explorer.getBaseProperties(object, classInfo);
+			for (String property : layouts.get(classIdx)) {
+				JpaPropertyInfo propertyInfo = classInfo.getPropertyInfo(property);
+				boolean isPresent;
+				if (propertyInfo.isBasic() && !propertyInfo.isLazy()) {
+					isPresent = baseProperties.contains(property) && classInfo.test(explorer.propertyFilter, object, property);
+				} else {
+					isPresent = explored.contains(property);
+				}
+				if (isPresent) {
+					writeValue(propertyInfo.getValue(object));
+				} else {
+					out.writeByte(ABSENT);
+				}
+			}
+		}
+
+		@SuppressWarnings("rawtypes")
+		private void writeValue(Object value) throws IOException {
+			if (value == null) {
+				out.writeByte(NULL);
+			} else if (value instanceof String) {
+				out.writeByte(STRING);
+				out.writeInt(string((String) value));
+			} else if (value instanceof Integer) {
+				out.writeByte(INT);
+				out.writeInt((Integer) value);
+			} else if (value instanceof Long) {
+				out.writeByte(LONG);
+				out.writeLong((Long) value);
+			} else if (value instanceof Double) {
+				out.writeByte(DOUBLE);
+				out.writeDouble((Double) value);
+			} else if (value instanceof Float) {
+				out.writeByte(FLOAT);
+				out.writeFloat((Float) value);
+			} else if (value instanceof Boolean) {
+				out.writeByte((Boolean) value ? TRUE : FALSE);
+			} else if (value instanceof Short) {
+				out.writeByte(SHORT);
+				out.writeShort((Short) value);
+			} else if (value instanceof Byte) {
+				out.writeByte(BYTE);
+				out.writeByte((Byte) value);
+			} else if (value instanceof Character) {
+				out.writeByte(CHAR);
+				out.writeChar((Character) value);
+			} else if (value instanceof byte[]) {
+				out.writeByte(BYTES);
+				writeBytes((byte[]) value);
+			} else if (value instanceof java.sql.Timestamp) {
+				out.writeByte(TIMESTAMP);
+				out.writeLong(((java.sql.Timestamp) value).getTime());
+				out.writeInt(((java.sql.Timestamp) value).getNanos());
+			} else if (value instanceof Date) {
+				out.writeByte(value instanceof java.sql.Date ? SQL_DATE : (value instanceof java.sql.Time ? SQL_TIME : DATE));
+				out.writeLong(((Date) value).getTime());
+			} else if (value instanceof BigInteger) {
+				out.writeByte(BIG_INTEGER);
+				writeBytes(((BigInteger) value).toByteArray());
+			} else if (value instanceof BigDecimal) {
+				out.writeByte(BIG_DECIMAL);
+				out.writeInt(((BigDecimal) value).scale());
+				writeBytes(((BigDecimal) value).unscaledValue().toByteArray());
+			} else if (value instanceof Enum) {
+				out.writeByte(ENUM);
+				out.writeInt(string(((Enum) value).getDeclaringClass().getName()));
+				out.writeInt(string(((Enum) value).name()));
+			} else if (value instanceof Collection) {
+				Collection collection = (Collection) value;
+				out.writeByte(value instanceof List ? LIST : (value instanceof SortedSet ? SORTED_SET : SET));
+				out.writeInt(collection.size());
+				for (Object element : collection) {
+					writeValue(element);
+				}
+			} else if (value instanceof Map) {
+				Map<?, ?> map = (Map<?, ?>) value;
+				out.writeByte(value instanceof SortedMap ? SORTED_MAP : MAP);
+				out.writeInt(map.size());
+				for (Map.Entry<?, ?> entry : map.entrySet()) {
+					writeValue(entry.getKey());
+					writeValue(entry.getValue());
+				}
+			} else if (JpaClassInfo.getJpaClass(value.getClass()) != null) {
+				if (isEntity(value)) {
+					Integer ref = refs.get(value);
+					if (ref == null) {
+						throw new IllegalStateException("The entity is not explored: " + value);
+					}
+					out.writeByte(REF);
+					out.writeInt(ref);
+				} else {
+					out.writeByte(EMBEDDED);
+					writeObject(value);
+				}
+			} else {
+				throw new IllegalArgumentException("Unsupported value: " + value.getClass());
+			}
+		}
+
+		private void writeBytes(byte[] bytes) throws IOException {
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+}
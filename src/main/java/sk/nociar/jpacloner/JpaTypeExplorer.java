@@ -0,0 +1,110 @@
+package sk.nociar.jpacloner;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import sk.nociar.jpacloner.graphs.MatchingEntityExplorer;
+import sk.nociar.jpacloner.graphs.PatternExplanation;
+import sk.nociar.jpacloner.graphs.WildcardPattern;
+
+/**
+ * Explorer of JPA types used for static walks of patterns, see {@link PatternExplanation}.
+ * Nodes are JPA classes or {@link MapEntryType}s, edges are relations.
+ * 
+ * @author Miroslav Nociar
+ */
+final class JpaTypeExplorer implements MatchingEntityExplorer {
+	
+	static final JpaTypeExplorer INSTANCE = new JpaTypeExplorer();
+	
+	private JpaTypeExplorer() {
+	}
+
+	/**
+	 * Static type of a {@link Map.Entry} of a {@link Map} relation.
+	 */
+	static final class MapEntryType {
+		private final Class<?> keyClass;
+		private final Class<?> valueClass;
+
+		MapEntryType(Class<?> keyClass, Class<?> valueClass) {
+			this.keyClass = keyClass;
+			this.valueClass = valueClass;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof MapEntryType)) {
+				return false;
+			}
+			MapEntryType other = (MapEntryType) obj;
+			return keyClass == other.keyClass && valueClass == other.valueClass;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * keyClass.hashCode() + valueClass.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return "Map.Entry<" + keyClass.getName() + ", " + valueClass.getName() + ">";
+		}
+	}
+
+	@Override
+	public Collection<String> getProperties(Object type) {
+		if (type instanceof MapEntryType) {
+			return JpaExplorer.mapEntryProperties;
+		}
+		JpaClassInfo info = type instanceof Class ? JpaClassInfo.get((Class<?>) type) : null;
+		return info == null ? Collections.<String>emptyList() : info.getRelations();
+	}
+
+	@Override
+	public Collection<String> getMatchedProperties(Object type, WildcardPattern pattern) {
+		if (type instanceof MapEntryType) {
+			return pattern.match(JpaExplorer.mapEntryProperties);
+		}
+		JpaClassInfo info = type instanceof Class ? JpaClassInfo.get((Class<?>) type) : null;
+		return info == null ? Collections.<String>emptyList() : info.getMatchedRelations(pattern);
+	}
+
+	@Override
+	public Collection<?> explore(Object type, String property) {
+		if (type instanceof MapEntryType) {
+			MapEntryType entryType = (MapEntryType) type;
+			if ("key".equals(property)) {
+				return target(entryType.keyClass);
+			} else if ("value".equals(property)) {
+				return target(entryType.valueClass);
+			}
+			return null;
+		}
+		JpaClassInfo classInfo = type instanceof Class ? JpaClassInfo.get((Class<?>) type) : null;
+		if (classInfo == null) {
+			return null;
+		}
+		JpaPropertyInfo propertyInfo = classInfo.getPropertyInfo(property);
+		if (propertyInfo == null || (propertyInfo.isBasic() && !propertyInfo.isLazy())) {
+			// explored property must be a relation or a lazy basic property
+			return null;
+		}
+		if (propertyInfo.isBasic()) {
+			return Collections.emptySet();
+		}
+		if (propertyInfo.getMapKeyClass() != null) {
+			return Collections.singleton(new MapEntryType(propertyInfo.getMapKeyClass(), propertyInfo.getTargetClass()));
+		}
+		return target(propertyInfo.getTargetClass());
+	}
+
+	/**
+	 * Only JPA classes are explored further, other types (e.g. basic values of @ElementCollection) are leaves.
+	 */
+	private static Collection<?> target(Class<?> clazz) {
+		Class<?> jpaClass = JpaClassInfo.getJpaClass(clazz);
+		return jpaClass == null ? Collections.emptySet() : Collections.singleton(jpaClass);
+	}
+}
@@ -0,0 +1,33 @@
+package sk.nociar.jpacloner;
+
+import javax.persistence.Persistence;
+import javax.persistence.PersistenceUtil;
+
+/**
+ * Load state of entities and properties as reported by the persistence providers, see {@link PersistenceUtil}.
+ * If no provider knows the load state then the entity (property) is considered loaded.
+ * 
+ * @author Miroslav Nociar
+ */
+final class LoadStates {
+	
+	private static final PersistenceUtil persistenceUtil = Persistence.getPersistenceUtil();
+
+	private LoadStates() {
+		throw new UnsupportedOperationException();
+	}
+	
+	/**
+	 * Returns <code>true</code> if the entity is loaded i.e. it is not an uninitialized proxy.
+	 */
+	static boolean isLoaded(Object entity) {
+		return persistenceUtil.isLoaded(entity);
+	}
+
+	/**
+	 * Returns <code>true</code> if the property of the entity is loaded.
+	 */
+	static boolean isLoaded(Object entity, String property) {
+		return persistenceUtil.isLoaded(entity, property);
+	}
+}
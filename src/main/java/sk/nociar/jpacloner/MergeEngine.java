@@ -0,0 +1,260 @@
+package sk.nociar.jpacloner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.persistence.Embeddable;
+import javax.persistence.Entity;
+
+/**
+ * Merge of a clone graph into a managed graph, the inverse of the cloning. Entities are matched by equals, 
+ * only differing properties are written, collections are reconciled in place (elements are added and removed, 
+ * the collection instance is kept). Entities of the clone graph which are not in the managed graph are 
+ * instantiated (the caller is responsible for persisting them e.g. by cascading). Singular relations are 
+ * merged before collections because hash codes may depend on *ToOne relations.
+ * 
+ * @author Miroslav Nociar
+ */
+final class MergeEngine {
+	
+	private final PropertyFilter propertyFilter;
+	
+	private final JpaExplorer cloneExplorer;
+	
+	/** managed entities keyed by themselves (i.e. matched by equals) */
+	private final Map<Object, Object> managedEntities = new HashMap<Object, Object>();
+	
+	private final Map<Object, Object> cloneToManaged = new IdentityHashMap<Object, Object>();
+	
+	private final List<Object[]> pendingCollections = new ArrayList<Object[]>();
+
+	MergeEngine(Object clone, Object managedRoot, PropertyFilter propertyFilter, String... patterns) {
+		this.propertyFilter = propertyFilter;
+		this.cloneExplorer = JpaExplorer.doExplore(clone, propertyFilter, patterns);
+		JpaExplorer managedExplorer = JpaExplorer.doExplore(managedRoot, propertyFilter, patterns);
+		for (Object managed : managedExplorer.entities.keySet()) {
+			if (isEntity(managed)) {
+				managedEntities.put(managed, managed);
+			}
+		}
+		cloneToManaged.put(clone, managedRoot);
+	}
+	
+	/**
+	 * Merges all explored entities of the clone graph.
+	 */
+	void merge() {
+		for (Entry<Object, Set<String>> entry : cloneExplorer.entities.entrySet()) {
+			Object clone = entry.getKey();
+			if (isEntity(clone)) {
+				mergeObject(clone, getManaged(clone), entry.getValue());
+			}
+		}
+		for (Object[] pending : pendingCollections) {
+			mergeCollection(pending[0], (JpaPropertyInfo) pending[1], pending[2]);
+		}
+		pendingCollections.clear();
+	}
+	
+	private static boolean isEntity(Object o) {
+		Class<?> jpaClass = JpaClassInfo.getJpaClass(o.getClass());
+		return jpaClass != null && jpaClass.getAnnotation(Entity.class) != null;
+	}
+	
+	private static boolean isEmbeddable(Object o) {
+		Class<?> jpaClass = JpaClassInfo.getJpaClass(o.getClass());
+		return jpaClass != null && jpaClass.getAnnotation(Embeddable.class) != null;
+	}
+	
+	private static Object newInstance(Object clone) {
+		try {
+			return JpaClassInfo.get(clone.getClass()).getConstructor().newInstance();
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to instantiate: " + clone, e);
+		}
+	}
+	
+	/**
+	 * Returns the managed counterpart of a cloned entity (instantiated if there is no counterpart).
+	 */
+	private Object getManaged(Object clone) {
+		Object managed = cloneToManaged.get(clone);
+		if (managed == null) {
+			managed = managedEntities.get(clone);
+			if (managed == null || JpaClassInfo.get(managed.getClass()) != JpaClassInfo.get(clone.getClass())) {
+				managed = newInstance(clone);
+			}
+			cloneToManaged.put(clone, managed);
+		}
+		return managed;
+	}
+	
+	/**
+	 * Returns the value to be stored in the managed graph: the managed entity, a copy of an embeddable or the value itself.
+	 */
+	private Object resolve(Object cloneValue) {
+		if (cloneValue == null || JpaClassInfo.getJpaClass(cloneValue.getClass()) == null) {
+			return cloneValue;
+		}
+		if (isEntity(cloneValue)) {
+			return getManaged(cloneValue);
+		}
+		Object managed = newInstance(cloneValue);
+		mergeObject(cloneValue, managed, getRelations(cloneValue));
+		return managed;
+	}
+	
+	private Set<String> getRelations(Object clone) {
+		Set<String> relations = cloneExplorer.entities.get(clone);
+		return relations == null ? Collections.<String>emptySet() : relations;
+	}
+	
+	/**
+	 * Writes differing basic properties and singular relations, collections are merged in the end.
+	 */
+	private void mergeObject(Object clone, Object managed, Set<String> relations) {
+		JpaClassInfo classInfo = JpaClassInfo.get(clone.getClass());
+		for (String property : cloneExplorer.getBaseProperties(clone, classInfo)) {
+			if (classInfo.test(propertyFilter, clone, property)) {
+				JpaPropertyInfo propertyInfo = classInfo.getPropertyInfo(property);
+				Object value = propertyInfo.getValue(clone);
+				if (!CloneEngine.isEqual(value, propertyInfo.getValue(managed))) {
+					propertyInfo.setValue(managed, value);
+				}
+			}
+		}
+		for (String relation : relations) {
+			JpaPropertyInfo propertyInfo = classInfo.getPropertyInfo(relation);
+			Object cloneValue = propertyInfo.getValue(clone);
+			if (propertyInfo.isBasic()) {
+				// the requested lazy property
+				if (!CloneEngine.isEqual(cloneValue, propertyInfo.getValue(managed))) {
+					propertyInfo.setValue(managed, cloneValue);
+				}
+				continue;
+			}
+			if (cloneValue == null) {
+				// relations which are null in the clone are not merged
+				continue;
+			}
+			if (!propertyInfo.isSingular()) {
+				pendingCollections.add(new Object[] { managed, propertyInfo, cloneValue });
+				continue;
+			}
+			Object managedValue = propertyInfo.getValue(managed);
+			if (managedValue != null && isEmbeddable(cloneValue) 
+					&& JpaClassInfo.get(cloneValue.getClass()) == JpaClassInfo.get(managedValue.getClass())) {
+				// merge the embeddable in place
+				mergeObject(cloneValue, managedValue, getRelations(cloneValue));
+				continue;
+			}
+			Object value = resolve(cloneValue);
+			if (value != managedValue) {
+				propertyInfo.setValue(managed, value);
+			}
+		}
+	}
+	
+	/**
+	 * Reconciles the managed collection in place. Lists are reconciled by equals i.e. retained elements are 
+	 * not written, missing elements are added and misplaced elements are moved (removed and added).
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private void mergeCollection(Object managed, JpaPropertyInfo propertyInfo, Object cloneValue) {
+		Object managedValue = propertyInfo.getValue(managed);
+		if (cloneValue instanceof Map) {
+			Map<Object, Object> desired = new HashMap<Object, Object>();
+			Object[] keys = new Object[((Map) cloneValue).size()];
+			Object[] values = new Object[keys.length];
+			int i = 0;
+			for (Object o : ((Map) cloneValue).entrySet()) {
+				Entry e = (Entry) o;
+				keys[i] = resolve(e.getKey());
+				values[i] = resolve(e.getValue());
+				desired.put(keys[i], values[i]);
+				i++;
+			}
+			if (managedValue == null) {
+				propertyInfo.setValue(managed, CollectionFactories.getDefaultFactory().newMap((Map) cloneValue, keys, values));
+				return;
+			}
+			Map managedMap = (Map) managedValue;
+			for (Iterator<?> it = managedMap.keySet().iterator(); it.hasNext();) {
+				if (!desired.containsKey(it.next())) {
+					it.remove();
+				}
+			}
+			for (Entry<Object, Object> e : desired.entrySet()) {
+				Object value = managedMap.get(e.getKey());
+				if (!CloneEngine.isEqual(value, e.getValue()) || (value == null && !managedMap.containsKey(e.getKey()))) {
+					managedMap.put(e.getKey(), e.getValue());
+				}
+			}
+			return;
+		}
+		Collection cloneCollection = (Collection) cloneValue;
+		Object[] elements = new Object[cloneCollection.size()];
+		int i = 0;
+		for (Object o : cloneCollection) {
+			elements[i++] = resolve(o);
+		}
+		if (managedValue == null) {
+			propertyInfo.setValue(managed, CollectionFactories.getDefaultFactory().newCollection(cloneCollection, elements));
+			return;
+		}
+		if (managedValue instanceof List) {
+			List managedList = (List) managedValue;
+			// remove surplus elements
+			Map<Object, Integer> counts = new HashMap<Object, Integer>();
+			for (Object element : elements) {
+				Integer count = counts.get(element);
+				counts.put(element, count == null ? 1 : count + 1);
+			}
+			for (Iterator<?> it = managedList.iterator(); it.hasNext();) {
+				Object element = it.next();
+				Integer count = counts.get(element);
+				if (count == null || count == 0) {
+					it.remove();
+				} else {
+					counts.put(element, count - 1);
+				}
+			}
+			// add missing and move misplaced elements, the prefix [0, i) is reconciled
+			for (i = 0; i < elements.length; i++) {
+				if (i < managedList.size() && CloneEngine.isEqual(managedList.get(i), elements[i])) {
+					continue;
+				}
+				for (int j = i + 1; j < managedList.size(); j++) {
+					if (CloneEngine.isEqual(managedList.get(j), elements[i])) {
+						managedList.remove(j);
+						break;
+					}
+				}
+				managedList.add(i, elements[i]);
+			}
+			return;
+		}
+		Collection managedCollection = (Collection) managedValue;
+		Set<Object> desired = new HashSet<Object>(elements.length * 2);
+		Collections.addAll(desired, elements);
+		for (Iterator<?> it = managedCollection.iterator(); it.hasNext();) {
+			if (!desired.contains(it.next())) {
+				it.remove();
+			}
+		}
+		for (Object element : elements) {
+			if (!managedCollection.contains(element)) {
+				managedCollection.add(element);
+			}
+		}
+	}
+}
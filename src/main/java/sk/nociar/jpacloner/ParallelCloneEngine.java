@@ -0,0 +1,141 @@
+package sk.nociar.jpacloner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Parallel clone of explored entities. Explored entities are split into partitions, each partition
+ * is processed by its own {@link CloneEngine} upon a shared concurrent map of original -&gt; clone.
+ * There are three phases separated by barriers:
+ * <ol>
+ * <li>clones are created and basic properties are copied,</li>
+ * <li>singular relations are wired,</li>
+ * <li>collections are wired (hash codes of clones may depend on singular relations).</li>
+ * </ol>
+ * The parallel clone is refused if an original or its requested lazy property (e.g. {@link javax.persistence.Lob}) 
+ * is not loaded (i.e. lazy loading could be triggered by other threads than the owner of the persistence context).
+ * Load states are checked by the calling thread before the first phase.
+ * 
+ * @author Miroslav Nociar
+ */
+final class ParallelCloneEngine {
+
+	private ParallelCloneEngine() {
+		throw new UnsupportedOperationException();
+	}
+	
+	private static abstract class Phase implements Callable<Void> {
+		final CloneEngine engine;
+		final List<Map.Entry<Object, Set<String>>> partition;
+
+		Phase(CloneEngine engine, List<Map.Entry<Object, Set<String>>> partition) {
+			this.engine = engine;
+			this.partition = partition;
+		}
+	}
+
+	/**
+	 * Clones explored entities in parallel, returns the map of original -&gt; clone.
+	 */
+	static Map<Object, Object> clone(Map<Object, Set<String>> entities, Map<Object, Set<String>> projections, CloneOptions options) {
+		final int parallelism = options.getParallelism();
+		final Map<Object, Object> originalToClone = new ConcurrentHashMap<Object, Object>(
+				Math.max(16, (int) (entities.size() / .75f) + 1), .75f, parallelism);
+		// split to partitions
+		List<Map.Entry<Object, Set<String>>> all = new ArrayList<Map.Entry<Object, Set<String>>>(entities.entrySet());
+		for (Map.Entry<Object, Set<String>> entry : all) {
+			checkLoaded(entry.getKey(), entry.getValue(), projections.get(entry.getKey()));
+		}
+		List<Phase> create = new ArrayList<Phase>();
+		List<Phase> wireSingular = new ArrayList<Phase>();
+		List<Phase> wireCollections = new ArrayList<Phase>();
+		int size = (all.size() + parallelism - 1) / parallelism;
+		for (int from = 0; from < all.size(); from += size) {
+			CloneEngine engine = new CloneEngine(options, originalToClone);
+			engine.setProjections(projections);
+			List<Map.Entry<Object, Set<String>>> partition = all.subList(from, Math.min(all.size(), from + size));
+			create.add(new Phase(engine, partition) {
+				@Override
+				public Void call() {
+					for (Map.Entry<Object, Set<String>> entry : partition) {
+						engine.create(entry.getKey());
+					}
+					return null;
+				}
+			});
+			wireSingular.add(new Phase(engine, partition) {
+				@Override
+				public Void call() {
+					for (Map.Entry<Object, Set<String>> entry : partition) {
+						engine.add(entry.getKey(), entry.getValue());
+					}
+					return null;
+				}
+			});
+			wireCollections.add(new Phase(engine, partition) {
+				@Override
+				public Void call() {
+					engine.finish();
+					return null;
+				}
+			});
+		}
+		ExecutorService executor = options.getExecutor();
+		invokeAll(executor, create);
+		invokeAll(executor, wireSingular);
+		invokeAll(executor, wireCollections);
+		return originalToClone;
+	}
+	
+	/**
+	 * Checks that the original and its lazy properties requested by explored properties or by the projection are 
+	 * loaded, lazy basic properties are read first by worker threads.
+	 */
+	private static void checkLoaded(Object original, Set<String> explored, Set<String> projection) {
+		if (!LoadStates.isLoaded(original)) {
+			throw new IllegalStateException("Parallel cloning refused, the entity is not loaded: " + original);
+		}
+		JpaClassInfo classInfo = JpaClassInfo.get(original.getClass());
+		if (classInfo == null) {
+			return;
+		}
+		for (String property : classInfo.getLazyProperties()) {
+			boolean isRequested = explored.contains(property) || (projection != null && projection.contains(property));
+			if (isRequested && !LoadStates.isLoaded(original, property)) {
+				throw new IllegalStateException("Parallel cloning refused, the property " + property + " is not loaded: " + original);
+			}
+		}
+	}
+	
+	/**
+	 * Invokes all tasks and returns their results in the order of tasks, a failure of a task is rethrown.
+	 */
+	static <T> List<T> invokeAll(ExecutorService executor, List<? extends Callable<T>> tasks) {
+		try {
+			List<T> results = new ArrayList<T>(tasks.size());
+			for (Future<T> future : executor.invokeAll(tasks)) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Parallel cloning interrupted", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package sk.nociar.jpacloner;
+
+/**
+ * The relation of a shortest path from roots to an explored object i.e. the parent object and its property 
+ * (for a {@link java.util.Map} relation both keys and values are reached by the map property), 
+ * see {@link JpaExploration#getParent(Object)}.
+ * 
+ * @author Miroslav Nociar
+ */
+public final class ParentLink {
+	
+	private final Object parent;
+	
+	private final String property;
+
+	ParentLink(Object parent, String property) {
+		this.parent = parent;
+		this.property = property;
+	}
+
+	public Object getParent() {
+		return parent;
+	}
+
+	public String getProperty() {
+		return property;
+	}
+
+	@Override
+	public String toString() {
+		return parent + "." + property;
+	}
+}
@@ -0,0 +1,353 @@
+package sk.nociar.jpacloner;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Growable array of primitive values of a wrapper type ({@link Integer}, {@link Long} or {@link Double}).
+ * Values are boxed on access. Backing store of {@link PrimitiveList} and {@link PrimitiveSet}.
+ * 
+ * @author Miroslav Nociar
+ */
+abstract class PrimitiveArray implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	int size = 0;
+	
+	/**
+	 * Returns <code>true</code> if values of the type can be stored in a primitive array.
+	 */
+	static boolean isSupported(Class<?> type) {
+		return type == Integer.class || type == Long.class || type == Double.class;
+	}
+	
+	/**
+	 * Creates the array for the wrapper type, see {@link #isSupported(Class)}.
+	 */
+	static PrimitiveArray create(Class<?> type, int capacity) {
+		if (type == Integer.class) {
+			return new IntArray(capacity);
+		} else if (type == Long.class) {
+			return new LongArray(capacity);
+		} else if (type == Double.class) {
+			return new DoubleArray(capacity);
+		}
+		throw new IllegalArgumentException("Unsupported type: " + type);
+	}
+	
+	/**
+	 * Returns <code>true</code> if the value can be stored in the array (i.e. non null value of the wrapper type).
+	 */
+	abstract boolean accepts(Object value);
+	
+	abstract Object get(int i);
+	
+	/**
+	 * Stores the value, returns the previous value.
+	 */
+	abstract Object set(int i, Object value);
+	
+	/**
+	 * Inserts the value at the position (shifts following values).
+	 */
+	abstract void insert(int i, Object value);
+	
+	/**
+	 * Removes the value at the position (shifts following values).
+	 */
+	abstract void remove(int i);
+	
+	/**
+	 * Removes values from the position <code>from</code> (inclusive) to <code>to</code> (exclusive).
+	 */
+	abstract void removeRange(int from, int to);
+	
+	/**
+	 * Binary search of the value in the ascending array, see {@link Arrays#binarySearch(int[], int, int, int)}.
+	 */
+	abstract int search(Object value);
+	
+	abstract int indexOf(Object value);
+	
+	/**
+	 * Trims the capacity to the size.
+	 */
+	abstract void trim();
+	
+	/**
+	 * Sorts values in the ascending order and removes duplicates.
+	 */
+	abstract void sortDistinct();
+	
+	/**
+	 * Returns the new capacity for the minimal capacity.
+	 */
+	static int grow(int capacity, int minCapacity) {
+		return Math.max(minCapacity, capacity + (capacity >> 1) + 1);
+	}
+	
+	private static final class IntArray extends PrimitiveArray {
+		private static final long serialVersionUID = 1L;
+		
+		private int[] values;
+
+		private IntArray(int capacity) {
+			values = new int[capacity];
+		}
+
+		@Override
+		boolean accepts(Object value) {
+			return value instanceof Integer;
+		}
+
+		@Override
+		Object get(int i) {
+			return values[i];
+		}
+
+		@Override
+		Object set(int i, Object value) {
+			Object previous = values[i];
+			values[i] = (Integer) value;
+			return previous;
+		}
+
+		@Override
+		void insert(int i, Object value) {
+			int v = (Integer) value;
+			if (size == values.length) {
+				values = Arrays.copyOf(values, grow(values.length, size + 1));
+			}
+			System.arraycopy(values, i, values, i + 1, size - i);
+			values[i] = v;
+			size++;
+		}
+
+		@Override
+		void remove(int i) {
+			System.arraycopy(values, i + 1, values, i, size - i - 1);
+			size--;
+		}
+
+		@Override
+		void removeRange(int from, int to) {
+			System.arraycopy(values, to, values, from, size - to);
+			size -= to - from;
+		}
+
+		@Override
+		int search(Object value) {
+			return Arrays.binarySearch(values, 0, size, (Integer) value);
+		}
+
+		@Override
+		int indexOf(Object value) {
+			if (accepts(value)) {
+				int v = (Integer) value;
+				for (int i = 0; i < size; i++) {
+					if (values[i] == v) {
+						return i;
+					}
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		void trim() {
+			if (size < values.length) {
+				values = Arrays.copyOf(values, size);
+			}
+		}
+
+		@Override
+		void sortDistinct() {
+			Arrays.sort(values, 0, size);
+			int n = 0;
+			for (int i = 0; i < size; i++) {
+				if (n == 0 || values[n - 1] != values[i]) {
+					values[n++] = values[i];
+				}
+			}
+			size = n;
+		}
+	}
+	
+	private static final class LongArray extends PrimitiveArray {
+		private static final long serialVersionUID = 1L;
+		
+		private long[] values;
+
+		private LongArray(int capacity) {
+			values = new long[capacity];
+		}
+
+		@Override
+		boolean accepts(Object value) {
+			return value instanceof Long;
+		}
+
+		@Override
+		Object get(int i) {
+			return values[i];
+		}
+
+		@Override
+		Object set(int i, Object value) {
+			Object previous = values[i];
+			values[i] = (Long) value;
+			return previous;
+		}
+
+		@Override
+		void insert(int i, Object value) {
+			long v = (Long) value;
+			if (size == values.length) {
+				values = Arrays.copyOf(values, grow(values.length, size + 1));
+			}
+			System.arraycopy(values, i, values, i + 1, size - i);
+			values[i] = v;
+			size++;
+		}
+
+		@Override
+		void remove(int i) {
+			System.arraycopy(values, i + 1, values, i, size - i - 1);
+			size--;
+		}
+
+		@Override
+		void removeRange(int from, int to) {
+			System.arraycopy(values, to, values, from, size - to);
+			size -= to - from;
+		}
+
+		@Override
+		int search(Object value) {
+			return Arrays.binarySearch(values, 0, size, (Long) value);
+		}
+
+		@Override
+		int indexOf(Object value) {
+			if (accepts(value)) {
+				long v = (Long) value;
+				for (int i = 0; i < size; i++) {
+					if (values[i] == v) {
+						return i;
+					}
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		void trim() {
+			if (size < values.length) {
+				values = Arrays.copyOf(values, size);
+			}
+		}
+
+		@Override
+		void sortDistinct() {
+			Arrays.sort(values, 0, size);
+			int n = 0;
+			for (int i = 0; i < size; i++) {
+				if (n == 0 || values[n - 1] != values[i]) {
+					values[n++] = values[i];
+				}
+			}
+			size = n;
+		}
+	}
+	
+	/**
+	 * Doubles are compared like {@link Double#equals(Object)} and {@link Double#compareTo(Double)}.
+	 */
+	private static final class DoubleArray extends PrimitiveArray {
+		private static final long serialVersionUID = 1L;
+		
+		private double[] values;
+
+		private DoubleArray(int capacity) {
+			values = new double[capacity];
+		}
+
+		@Override
+		boolean accepts(Object value) {
+			return value instanceof Double;
+		}
+
+		@Override
+		Object get(int i) {
+			return values[i];
+		}
+
+		@Override
+		Object set(int i, Object value) {
+			Object previous = values[i];
+			values[i] = (Double) value;
+			return previous;
+		}
+
+		@Override
+		void insert(int i, Object value) {
+			double v = (Double) value;
+			if (size == values.length) {
+				values = Arrays.copyOf(values, grow(values.length, size + 1));
+			}
+			System.arraycopy(values, i, values, i + 1, size - i);
+			values[i] = v;
+			size++;
+		}
+
+		@Override
+		void remove(int i) {
+			System.arraycopy(values, i + 1, values, i, size - i - 1);
+			size--;
+		}
+
+		@Override
+		void removeRange(int from, int to) {
+			System.arraycopy(values, to, values, from, size - to);
+			size -= to - from;
+		}
+
+		@Override
+		int search(Object value) {
+			return Arrays.binarySearch(values, 0, size, (Double) value);
+		}
+
+		@Override
+		int indexOf(Object value) {
+			if (accepts(value)) {
+				long bits = Double.doubleToLongBits((Double) value);
+				for (int i = 0; i < size; i++) {
+					if (Double.doubleToLongBits(values[i]) == bits) {
+						return i;
+					}
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		void trim() {
+			if (size < values.length) {
+				values = Arrays.copyOf(values, size);
+			}
+		}
+
+		@Override
+		void sortDistinct() {
+			Arrays.sort(values, 0, size);
+			int n = 0;
+			for (int i = 0; i < size; i++) {
+				if (n == 0 || Double.doubleToLongBits(values[n - 1]) != Double.doubleToLongBits(values[i])) {
+					values[n++] = values[i];
+				}
+			}
+			size = n;
+		}
+	}
+}
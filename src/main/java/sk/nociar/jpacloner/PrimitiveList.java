@@ -0,0 +1,97 @@
+package sk.nociar.jpacloner;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Modifiable {@link java.util.List} backed by a primitive array, see {@link PrimitiveArray}. 
+ * The <code>null</code> value is not supported.
+ * 
+ * @author Miroslav Nociar
+ */
+final class PrimitiveList extends AbstractList<Object> implements RandomAccess, Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private final PrimitiveArray array;
+
+	PrimitiveList(PrimitiveArray array) {
+		this.array = array;
+	}
+
+	@Override
+	public Object get(int index) {
+		checkIndex(index, array.size);
+		return array.get(index);
+	}
+
+	@Override
+	public Object set(int index, Object element) {
+		checkIndex(index, array.size);
+		checkElement(element);
+		return array.set(index, element);
+	}
+
+	@Override
+	public void add(int index, Object element) {
+		checkIndex(index, array.size + 1);
+		checkElement(element);
+		array.insert(index, element);
+		modCount++;
+	}
+
+	@Override
+	public Object remove(int index) {
+		checkIndex(index, array.size);
+		Object removed = array.get(index);
+		array.remove(index);
+		modCount++;
+		return removed;
+	}
+
+	@Override
+	public void clear() {
+		array.size = 0;
+		modCount++;
+	}
+
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+		if (fromIndex < 0 || fromIndex > toIndex || toIndex > array.size) {
+			throw new IndexOutOfBoundsException("From: " + fromIndex + ", To: " + toIndex + ", Size: " + array.size);
+		}
+		array.removeRange(fromIndex, toIndex);
+		modCount++;
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		return array.indexOf(o);
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return array.indexOf(o) >= 0;
+	}
+
+	@Override
+	public int size() {
+		return array.size;
+	}
+	
+	private static void checkIndex(int index, int size) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+	
+	private void checkElement(Object element) {
+		if (element == null) {
+			throw new NullPointerException();
+		}
+		if (!array.accepts(element)) {
+			throw new ClassCastException("Unsupported element: " + element.getClass());
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package sk.nociar.jpacloner;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Modifiable {@link java.util.Set} backed by an ascending primitive array, see {@link PrimitiveArray}.
+ * Lookups are binary searches, elements are iterated in the ascending order. The <code>null</code> value 
+ * is not supported.
+ * 
+ * @author Miroslav Nociar
+ */
+final class PrimitiveSet extends AbstractSet<Object> implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private final PrimitiveArray array;
+	
+	private transient int modCount = 0;
+
+	/**
+	 * Creates the set upon an ascending array without duplicates.
+	 */
+	PrimitiveSet(PrimitiveArray array) {
+		this.array = array;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return array.accepts(o) && array.search(o) >= 0;
+	}
+
+	@Override
+	public boolean add(Object e) {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+		if (!array.accepts(e)) {
+			throw new ClassCastException("Unsupported element: " + e.getClass());
+		}
+		int i = array.search(e);
+		if (i >= 0) {
+			return false;
+		}
+		array.insert(-(i + 1), e);
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if (!array.accepts(o)) {
+			return false;
+		}
+		int i = array.search(o);
+		if (i < 0) {
+			return false;
+		}
+		array.remove(i);
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		array.size = 0;
+		modCount++;
+	}
+
+	@Override
+	public Iterator<Object> iterator() {
+		return new Iterator<Object>() {
+			private int next = 0;
+			private int last = -1;
+			private int expectedModCount = modCount;
+
+			@Override
+			public boolean hasNext() {
+				return next < array.size;
+			}
+
+			@Override
+			public Object next() {
+				checkModCount();
+				if (next >= array.size) {
+					throw new NoSuchElementException();
+				}
+				last = next++;
+				return array.get(last);
+			}
+
+			@Override
+			public void remove() {
+				if (last < 0) {
+					throw new IllegalStateException();
+				}
+				checkModCount();
+				array.remove(last);
+				next = last;
+				last = -1;
+				expectedModCount = ++modCount;
+			}
+			
+			private void checkModCount() {
+				if (modCount != expectedModCount) {
+					throw new ConcurrentModificationException();
+				}
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return array.size;
+	}
+}
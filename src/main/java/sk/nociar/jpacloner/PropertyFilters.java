@@ -11,6 +11,7 @@ import java.util.List;
  * PropertyFilter filter = PropertyFilterFactory.getAnnotationFilter(Id.class, Transient.class, Version.class); 
  * Company cloned = JpaCloner.clone(company, filter, "department+.(boss|employees).address");
  * </pre>
+ * Annotation filters (and their compositions) are {@link ClassPropertyFilter}s i.e. they are evaluated once per class.
  * 
  * @author Miroslav Nociar
  */
@@ -30,7 +31,7 @@ public class PropertyFilters {
 		}
 	};
 	
-	private static final class AnnotationFilter implements PropertyFilter {
+	private static final class AnnotationFilter extends ClassPropertyFilter {
 		private final Class<? extends Annotation> clazz;
 
 		private AnnotationFilter(Class<? extends Annotation> clazz) {
@@ -41,20 +42,24 @@ public class PropertyFilters {
 		}
 
 		@Override
-		public boolean test(Object entity, String property) {
-			if (entity == null) {
-				return true;
-			}
-			JpaClassInfo classInfo = JpaClassInfo.get(entity.getClass());
-			if (classInfo == null) {
-				return true;
-			}
-			JpaPropertyInfo propertyInfo = classInfo.getPropertyInfo(property);
+		public boolean test(Class<?> jpaClass, String property) {
+			JpaClassInfo classInfo = JpaClassInfo.get(jpaClass);
+			JpaPropertyInfo propertyInfo = classInfo == null ? null : classInfo.getPropertyInfo(property);
 			if (propertyInfo == null) {
 				return true;
 			}
 			return propertyInfo.getAccessibleObject().getAnnotation(clazz) == null;
 		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof AnnotationFilter && clazz == ((AnnotationFilter) obj).clazz;
+		}
+
+		@Override
+		public int hashCode() {
+			return clazz.hashCode();
+		}
 	}
 	
 	private static final class ComposedFilter implements PropertyFilter {
@@ -76,18 +81,61 @@ public class PropertyFilters {
 			return true;
 		}
 	}
+	
+	/**
+	 * Composition of {@link ClassPropertyFilter}s, evaluated once per class.
+	 */
+	private static final class ComposedClassFilter extends ClassPropertyFilter {
+		
+		private final List<ClassPropertyFilter> filters;
+
+		private ComposedClassFilter(List<ClassPropertyFilter> filters) {
+			this.filters = filters;
+		}
+		
+		@Override
+		public boolean test(Class<?> jpaClass, String property) {
+			for (ClassPropertyFilter filter : filters) {
+				if (!filter.test(jpaClass, property)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof ComposedClassFilter && filters.equals(((ComposedClassFilter) obj).filters);
+		}
+
+		@Override
+		public int hashCode() {
+			return filters.hashCode();
+		}
+	}
 
 	public static PropertyFilter getDefaultFilter() {
 		return defaultFilter;
 	}
 	
+	/**
+	 * Returns the conjunction of filters. The conjunction of {@link ClassPropertyFilter}s is also 
+	 * a {@link ClassPropertyFilter}.
+	 */
 	public static PropertyFilter getComposedFilter(PropertyFilter filter, PropertyFilter... filters) {
 		List<PropertyFilter> all = new ArrayList<PropertyFilter>();
 		all.add(filter);
 		if (filters != null) {
 			all.addAll(Arrays.asList(filters));
 		}
-		return new ComposedFilter(all);
+		List<ClassPropertyFilter> classFilters = new ArrayList<ClassPropertyFilter>();
+		for (PropertyFilter f : all) {
+			if (!(f instanceof ClassPropertyFilter)) {
+				return new ComposedFilter(all);
+			}
+			classFilters.add((ClassPropertyFilter) f);
+		}
+		return new ComposedClassFilter(classFilters);
 	}
 	
 	public static PropertyFilter getAnnotationFilter(Class<? extends Annotation> clazz) {
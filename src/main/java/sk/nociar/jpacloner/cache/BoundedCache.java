@@ -0,0 +1,219 @@
+package sk.nociar.jpacloner.cache;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free cache with a bounded size. If the size exceeds the maximum, entries are evicted by the 
+ * "second chance" (CLOCK) algorithm i.e. an entry which was hit since the last scan survives the scan.
+ * Optionally entries expire after a time to live (expired entries are counted as evictions).
+ * The cache counts hits, misses and evictions. Instances are thread safe.
+ * 
+ * @author Miroslav Nociar
+ *
+ * @param <K>
+ *            type of keys
+ * @param <V>
+ *            type of values
+ */
+public final class BoundedCache<K, V> {
+	
+	private static final class Node<V> {
+		private final V value;
+		private final long created;
+		private volatile boolean isReferenced = false;
+		
+		private Node(V value, long created) {
+			this.value = value;
+			this.created = created;
+		}
+	}
+	
+	private final ConcurrentMap<K, Node<V>> map = new ConcurrentHashMap<K, Node<V>>();
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private volatile int maximumSize;
+	/** time to live in nanoseconds, zero means no expiration */
+	private volatile long timeToLive = 0;
+
+	public BoundedCache(int maximumSize) {
+		setMaximumSize(maximumSize);
+	}
+	
+	/**
+	 * Creates the cache with expiring entries.
+	 */
+	public BoundedCache(int maximumSize, long timeToLive, TimeUnit unit) {
+		setMaximumSize(maximumSize);
+		setTimeToLive(timeToLive, unit);
+	}
+	
+	private boolean isExpired(Node<V> node) {
+		long ttl = timeToLive;
+		return ttl != 0 && System.nanoTime() - node.created >= ttl;
+	}
+	
+	/**
+	 * Removes the expired node, returns <code>true</code> if removed by this thread.
+	 */
+	private boolean expire(K key, Node<V> node) {
+		if (map.remove(key, node)) {
+			size.decrementAndGet();
+			evictions.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the cached value or <code>null</code>.
+	 */
+	public V get(K key) {
+		Node<V> node = map.get(key);
+		if (node != null && isExpired(node)) {
+			expire(key, node);
+			node = null;
+		}
+		if (node == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		node.isReferenced = true;
+		hits.incrementAndGet();
+		return node.value;
+	}
+	
+	/**
+	 * Puts the value in the cache if there is no value for the key. Returns the cached value 
+	 * i.e. the previous value or the passed one.
+	 */
+	public V putIfAbsent(K key, V value) {
+		if (value == null) {
+			throw new NullPointerException();
+		}
+		Node<V> node = new Node<V>(value, System.nanoTime());
+		Node<V> previous = map.putIfAbsent(key, node);
+		while (previous != null) {
+			if (!isExpired(previous)) {
+				return previous.value;
+			}
+			if (map.replace(key, previous, node)) {
+				evictions.incrementAndGet();
+				return value;
+			}
+			previous = map.putIfAbsent(key, node);
+		}
+		if (size.incrementAndGet() > maximumSize) {
+			evict(key);
+		}
+		return value;
+	}
+	
+	/**
+	 * Removes the value from the cache.
+	 */
+	public void remove(K key) {
+		if (map.remove(key) != null) {
+			size.decrementAndGet();
+		}
+	}
+	
+	/**
+	 * Removes all values from the cache, counters are not reset.
+	 */
+	public void clear() {
+		for (K key : map.keySet()) {
+			remove(key);
+		}
+	}
+
+	/**
+	 * Evicts entries until the size is within the maximum, the just inserted entry is kept.
+	 */
+	private void evict(K inserted) {
+		Iterator<Map.Entry<K, Node<V>>> iterator = map.entrySet().iterator();
+		// second chance is given only during the first two scans (prevents live-lock of concurrent hits)
+		int secondChances = 2 * maximumSize;
+		while (size.get() > maximumSize) {
+			if (!iterator.hasNext()) {
+				iterator = map.entrySet().iterator();
+				if (!iterator.hasNext()) {
+					return;
+				}
+			}
+			Map.Entry<K, Node<V>> entry = iterator.next();
+			Node<V> node = entry.getValue();
+			if (entry.getKey().equals(inserted) && size.get() > 1) {
+				continue;
+			}
+			if (isExpired(node)) {
+				expire(entry.getKey(), node);
+			} else if (node.isReferenced && secondChances-- > 0) {
+				node.isReferenced = false;
+			} else if (map.remove(entry.getKey(), node)) {
+				size.decrementAndGet();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+	
+	public int size() {
+		return size.get();
+	}
+
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * Sets the maximum size, the cache will shrink during the next put.
+	 */
+	public void setMaximumSize(int maximumSize) {
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+		}
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * Returns the time to live in the unit, zero means no expiration.
+	 */
+	public long getTimeToLive(TimeUnit unit) {
+		return unit.convert(timeToLive, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Sets the time to live of entries, zero disables the expiration.
+	 */
+	public void setTimeToLive(long timeToLive, TimeUnit unit) {
+		if (timeToLive < 0) {
+			throw new IllegalArgumentException("Time to live must not be negative: " + timeToLive);
+		}
+		this.timeToLive = unit.toNanos(timeToLive);
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return "size=" + size() + ", maximumSize=" + maximumSize + ", hits=" + getHits() + ", misses=" + getMisses()
+				+ ", evictions=" + getEvictions();
+	}
+}
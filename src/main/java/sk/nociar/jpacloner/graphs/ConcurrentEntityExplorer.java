@@ -0,0 +1,28 @@
+package sk.nociar.jpacloner.graphs;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Thread safe entity explorer. Large frontiers of the exploration (e.g. big collections, iterations of the "+" operator)
+ * are split into chunks explored in parallel by the executor. The set of explored entities does not depend on the
+ * order of the exploration, so the result is deterministic.
+ * 
+ * @author Miroslav Nociar
+ */
+public interface ConcurrentEntityExplorer extends EntityExplorer {
+
+	/**
+	 * Returns the executor of parallel explorations.
+	 */
+	public ExecutorService getExecutor();
+
+	/**
+	 * Returns the minimal size of a frontier which is split into chunks.
+	 */
+	public int getSplitThreshold();
+
+	/**
+	 * Returns the maximal number of chunks of a frontier.
+	 */
+	public int getParallelism();
+}
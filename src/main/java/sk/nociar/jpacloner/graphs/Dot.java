@@ -4,8 +4,8 @@ import java.util.Collection;
 import java.util.Set;
 
 public final class Dot extends GraphExplorer {
-	private final GraphExplorer a;
-	private final GraphExplorer b;
+	final GraphExplorer a;
+	final GraphExplorer b;
 
 	public Dot(GraphExplorer a, GraphExplorer b) {
 		this.a = a;
@@ -16,4 +16,55 @@ public final class Dot extends GraphExplorer {
 	public Set<?> explore(Collection<?> entities, EntityExplorer entityExplorer) {
 		return b.explore(a.explore(entities, entityExplorer), entityExplorer);
 	}
+
+	@Override
+	EntitySink open(EntityExplorer entityExplorer, EntitySink downstream) {
+		return a.open(entityExplorer, b.open(entityExplorer, downstream));
+	}
+
+	@Override
+	Set<Object> analyze(Set<Object> types, PatternExplanation explanation) {
+		return b.analyze(a.analyze(types, explanation), explanation);
+	}
+
+	@Override
+	GraphExplorer optimize() {
+		return dot(a.optimize(), b.optimize());
+	}
+
+	/**
+	 * Creates a right associative {@link Dot} of optimized explorers.
+	 */
+	static GraphExplorer dot(GraphExplorer a, GraphExplorer b) {
+		if (a instanceof Terminator) {
+			// nothing to explore after the terminator
+			return a;
+		}
+		if (a instanceof Dot) {
+			Dot d = (Dot) a;
+			return new Dot(d.a, dot(d.b, b));
+		}
+		return new Dot(a, b);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Dot)) {
+			return false;
+		}
+		Dot other = (Dot) obj;
+		return a.equals(other.a) && b.equals(other.b);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * a.hashCode() + b.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		String sa = a instanceof Or ? group(a) : a.toString();
+		String sb = b instanceof Or ? group(b) : b.toString();
+		return sa + "." + sb;
+	}
 }
\ No newline at end of file
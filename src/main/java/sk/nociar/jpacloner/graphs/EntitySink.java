@@ -0,0 +1,23 @@
+package sk.nociar.jpacloner.graphs;
+
+/**
+ * Receiver of entities pushed one by one, see {@link GraphExplorer#stream(java.util.Collection, EntityExplorer, EntitySink)}.
+ * 
+ * @author Miroslav Nociar
+ */
+public interface EntitySink {
+	
+	/**
+	 * Sink which ignores all entities.
+	 */
+	public static final EntitySink DISCARD = new EntitySink() {
+		@Override
+		public void push(Object entity) {
+		}
+	};
+
+	/**
+	 * Receives an entity (node), the same entity may be pushed several times.
+	 */
+	public void push(Object entity);
+}
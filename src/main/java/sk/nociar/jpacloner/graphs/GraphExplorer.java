@@ -2,14 +2,14 @@ package sk.nociar.jpacloner.graphs;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import sk.nociar.jpacloner.cache.BoundedCache;
 
 /**
  * Generic explorer of paths in a graph. It is required that the graph is stable
@@ -23,6 +23,7 @@ import java.util.regex.Pattern;
  * <li>Terminator "$" ends the preceding path.</li>
  * <li>Parentheses "(", ")" groups the paths.</li>
  * <li>Wildcards "*", "?" in property names.</li>
+ * <li>Braces "{", "}" project basic properties of the preceding path: employees{name,email}.</li>
  * </ul>
  * Some examples follow:
  * <ul>
@@ -30,7 +31,9 @@ import java.util.regex.Pattern;
  * <li>device.(interfaces.type|driver.author)</li>
  * <li>company.department+.(boss|employees).address</li>
  * <li>*+</li>
+ * <li>company.department+.employees{name,email}.address{city}</li>
  * </ul>
+ * Projections are applied only by a {@link ProjectingEntityExplorer}, other explorers ignore them.
  * 
  * <b>NOTE</b>: Entities MUST correctly implement
  * {@link Object#equals(Object obj)} and {@link Object#hashCode()}.
@@ -39,39 +42,12 @@ import java.util.regex.Pattern;
  */
 public abstract class GraphExplorer {
 
-	private static final Pattern p;
-	private static final Set<String> operators = new HashSet<String>();
-	private static final Map<String, Integer> operatorToPriority = new HashMap<String, Integer>();
-	private static final int LITERAL_PRIORITY = 10;
-
-	static {
-		// init operators
-		operators.add("(");
-		operators.add(")");
-		operators.add(".");
-		operators.add("|");
-		operators.add("+");
-		operators.add("$");
-		// init operator priorities
-		operatorToPriority.put("|", 1);
-		operatorToPriority.put(".", 2);
-		operatorToPriority.put("+", 3);
-		operatorToPriority.put("$", 4);
-		// init pattern
-		StringBuilder sb = new StringBuilder();
-		sb.append("[");
-		for (String op : operators) {
-			sb.append("\\").append(op);
-		}
-		sb.append("]|[^\\s");
-		for (String op : operators) {
-			sb.append("\\").append(op);
-		}
-		sb.append("]+");
-		p = Pattern.compile(sb.toString());
-	}
+	private static final int DEFAULT_CACHE_SIZE = 1024;
 
-	private static final Map<String, GraphExplorer> cache = new ConcurrentHashMap<String, GraphExplorer>();
+	/**
+	 * Cache of compiled patterns (including wildcards).
+	 */
+	static final BoundedCache<String, GraphExplorer> cache = new BoundedCache<String, GraphExplorer>(DEFAULT_CACHE_SIZE);
 
 	/**
 	 * Factory method for complex {@link GraphExplorer}. Returned instance is
@@ -83,102 +59,230 @@ public abstract class GraphExplorer {
 		if (explorer != null) {
 			return explorer;
 		}
-		Matcher m = p.matcher(pattern);
-		// evaluate priority of each token
-		List<String> tokens = new ArrayList<String>();
-		List<Integer> priorities = new ArrayList<Integer>();
-		int offset = 0;
-		while (m.find()) {
-			String token = m.group();
-			if ("(".equals(token)) {
-				offset += LITERAL_PRIORITY;
-				continue;
-			}
-			if (")".equals(token)) {
-				offset -= LITERAL_PRIORITY;
-				continue;
-			}
-			// add to tokens
-			tokens.add(token);
-			// compute the priority
-			Integer priority = operatorToPriority.get(token);
-			if (priority == null) {
-				// literal
-				priorities.add(offset + LITERAL_PRIORITY);
-			} else {
-				// operator
-				priorities.add(offset + priority);
-			}
+		explorer = new Parser(pattern).parse().optimize();
+		// save in the cache
+		return cache.putIfAbsent(pattern, explorer);
+	}
+
+	/**
+	 * Returns the cache of compiled patterns. The cache is bounded, its maximum size can be changed.
+	 */
+	public static BoundedCache<String, GraphExplorer> getCache() {
+		return cache;
+	}
+
+	/**
+	 * Single pass recursive descent parser. Grammar (from the lowest priority):
+	 * <pre>
+	 * or      := dot ("|" dot)*
+	 * dot     := postfix ("." postfix)*
+	 * postfix := primary ("+" | "$")*
+	 * primary := literal | "(" or ")"
+	 * </pre>
+	 * Literals are sequences of non-whitespace and non-operator characters, whitespace is ignored.
+	 */
+	private static final class Parser {
+		private final String pattern;
+		private int pos = 0;
+
+		private Parser(String pattern) {
+			this.pattern = pattern;
 		}
-		if (offset != 0) {
-			throw new IllegalArgumentException("Wrong parentheses!");
+
+		private GraphExplorer parse() {
+			GraphExplorer explorer = parseOr();
+			if (peek() == ')') {
+				throw new IllegalArgumentException("Wrong parentheses!");
+			}
+			if (pos < pattern.length()) {
+				throw new IllegalArgumentException("Missing operator near: " + pattern.substring(pos));
+			}
+			return explorer;
 		}
 
-		explorer = getExplorer(tokens, priorities);
-		// save in the cache
-		cache.put(pattern, explorer);
-		return explorer;
-	}
+		private GraphExplorer parseOr() {
+			List<GraphExplorer> list = new ArrayList<GraphExplorer>();
+			list.add(parseDot());
+			while (peek() == '|') {
+				pos++;
+				list.add(parseDot());
+			}
+			// right associative
+			GraphExplorer explorer = list.get(list.size() - 1);
+			for (int i = list.size() - 2; i >= 0; i--) {
+				explorer = new Or(list.get(i), explorer);
+			}
+			return explorer;
+		}
 
-	private static GraphExplorer getExplorer(List<String> tokens, List<Integer> priorities) {
-		if (tokens.size() != priorities.size()) {
-			throw new IllegalStateException("Tokens & priorities does not match!");
+		private GraphExplorer parseDot() {
+			List<GraphExplorer> list = new ArrayList<GraphExplorer>();
+			list.add(parsePostfix());
+			while (peek() == '.') {
+				pos++;
+				list.add(parsePostfix());
+			}
+			// right associative
+			GraphExplorer explorer = list.get(list.size() - 1);
+			for (int i = list.size() - 2; i >= 0; i--) {
+				explorer = new Dot(list.get(i), explorer);
+			}
+			return explorer;
 		}
-		if (tokens.isEmpty()) {
-			throw new IllegalStateException("No tokens!");
+
+		private GraphExplorer parsePostfix() {
+			GraphExplorer explorer = parsePrimary();
+			for (char c = peek(); c == '+' || c == '$' || c == '{'; c = peek()) {
+				pos++;
+				if (c == '{') {
+					explorer = new Projection(explorer, parseProjection());
+				} else {
+					explorer = c == '+' ? new Multi(explorer) : new Terminator(explorer);
+				}
+			}
+			return explorer;
 		}
-		// find the leftmost operator with the lowest priority
-		int idx = -1;
-		int minPriority = Integer.MAX_VALUE;
-		for (int i = 0; i < priorities.size(); i++) {
-			int priority = priorities.get(i);
-			if (priority < minPriority) {
-				minPriority = priority;
-				idx = i;
+
+		private SortedSet<String> parseProjection() {
+			SortedSet<String> properties = new TreeSet<String>();
+			properties.add(parseProperty());
+			while (peek() == ',') {
+				pos++;
+				properties.add(parseProperty());
+			}
+			if (peek() != '}') {
+				throw new IllegalArgumentException("Wrong braces!");
 			}
+			pos++;
+			return properties;
 		}
-		String token = tokens.get(idx);
-		if (!operators.contains(token)) {
-			if (tokens.size() != 1) {
-				throw new IllegalArgumentException("Missing operator near: " + token);
+
+		private GraphExplorer parsePrimary() {
+			char c = peek();
+			if (c == '(') {
+				pos++;
+				GraphExplorer explorer = parseOr();
+				if (peek() != ')') {
+					throw new IllegalArgumentException("Wrong parentheses!");
+				}
+				pos++;
+				return explorer;
 			}
-			if (token.contains("*") || token.contains("?")) {
+			String token = parseLiteral();
+			if (token.indexOf('*') >= 0 || token.indexOf('?') >= 0) {
 				return WildcardPattern.get(token);
 			}
 			return new Literal(token);
 		}
 
-		if (".".equals(token) || "|".equals(token)) {
-			List<String> ta = tokens.subList(0, idx);
-			List<String> tb = tokens.subList(idx + 1, tokens.size());
-			List<Integer> pa = priorities.subList(0, idx);
-			List<Integer> pb = priorities.subList(idx + 1, priorities.size());
-			GraphExplorer a = getExplorer(ta, pa);
-			GraphExplorer b = getExplorer(tb, pb);
-			if (".".equals(token)) {
-				return new Dot(a, b);
-			} else {
-				return new Or(a, b);
+		private String parseProperty() {
+			String property = parseLiteral();
+			if (property.indexOf('*') >= 0 || property.indexOf('?') >= 0) {
+				throw new IllegalArgumentException("Wildcards are not supported in projections: " + property);
 			}
+			return property;
 		}
 
-		if ("+".equals(token) || "$".equals(token)) {
-			if (idx != (tokens.size() - 1)) {
-				throw new IllegalArgumentException("Postfix unary operator must be the last token!");
+		private String parseLiteral() {
+			peek();
+			int start = pos;
+			while (pos < pattern.length() && isLiteral(pattern.charAt(pos))) {
+				pos++;
 			}
-			List<String> ta = tokens.subList(0, idx);
-			List<Integer> pa = priorities.subList(0, idx);
-			GraphExplorer a = getExplorer(ta, pa);
-			if ("$".equals(token)) {
-				return new Terminator(a);
-			} else {
-				return new Multi(a);
+			if (start == pos) {
+				throw new IllegalArgumentException("Missing operand at position " + pos + " of: " + pattern);
 			}
+			return pattern.substring(start, pos);
 		}
 
-		throw new IllegalStateException("Unknown tokens: " + tokens);
+		/**
+		 * Skips whitespace and returns the current character or zero at the end.
+		 */
+		private char peek() {
+			while (pos < pattern.length() && Character.isWhitespace(pattern.charAt(pos))) {
+				pos++;
+			}
+			return pos < pattern.length() ? pattern.charAt(pos) : 0;
+		}
+
+		private static boolean isLiteral(char c) {
+			return !Character.isWhitespace(c) && c != '(' && c != ')' && c != '.' && c != '|' && c != '+' && c != '$' 
+					&& c != '{' && c != '}' && c != ',';
+		}
 	}
 
 	public abstract Set<?> explore(Collection<?> entities, EntityExplorer explorer);
 
+	/**
+	 * Push based exploration: entities are pushed one by one through the explorer to the sink, i.e. 
+	 * no intermediate sets are created. Duplicates are removed only from roots and by the plus "+" 
+	 * operator (prevention of cycles), i.e. the sink may receive an entity several times.
+	 * The cost grows with the number of paths (not entities), graphs with shared nodes (e.g. back references 
+	 * to a parent) should be explored by the set based {@link #explore(Collection, EntityExplorer)}.
+	 * The {@link StreamingEntityExplorer} avoids also collections of explored entities.
+	 */
+	public final void stream(Collection<?> entities, EntityExplorer explorer, EntitySink sink) {
+		EntitySink pipeline = open(explorer, sink);
+		if (entities instanceof Set) {
+			for (Object entity : entities) {
+				pipeline.push(entity);
+			}
+		} else {
+			Set<Object> roots = new HashSet<Object>();
+			for (Object entity : entities) {
+				if (roots.add(entity)) {
+					pipeline.push(entity);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates a sink which explores pushed entities and pushes explored entities to the downstream.
+	 * The created sink is not thread safe and must be used for a single exploration.
+	 */
+	abstract EntitySink open(EntityExplorer explorer, EntitySink downstream);
+
+	/**
+	 * Returns an equivalent explorer with less or equal number of nodes. Explorers returned by 
+	 * the {@link #get(String)} are optimized, the {@link #toString()} returns the optimized pattern.
+	 * The optimization includes:
+	 * <ul>
+	 * <li>factoring of common prefixes: "a.b|a.c|a.c.d" -&gt; "a.(b|c.(d)?)"</li>
+	 * <li>removal of duplicate branches: "a|b|a" -&gt; "a|b"</li>
+	 * <li>collapsing of nested plus operators: "(a+)+" -&gt; "a+"</li>
+	 * <li>simplification of terminators: "a$$" -&gt; "a$", "a$.b" -&gt; "a$", "a$|b$" -&gt; "(a|b)$"</li>
+	 * </ul>
+	 * The "(d)?" denotes an optional path (see {@link Maybe}), it is not a part of the pattern syntax.
+	 */
+	abstract GraphExplorer optimize();
+
+	/**
+	 * Static counterpart of the {@link #explore(Collection, EntityExplorer)}. 
+	 * Explores types instead of entities, returns a new set of reached types.
+	 */
+	abstract Set<Object> analyze(Set<Object> types, PatternExplanation explanation);
+
+	/**
+	 * Walks the pattern statically from the root types and records the result in the explanation.
+	 * The type explorer of the explanation must return target types of properties instead of entities,
+	 * see {@link PatternExplanation}.
+	 */
+	public final void explain(Collection<?> rootTypes, PatternExplanation explanation) {
+		for (Object type : rootTypes) {
+			explanation.addType(type);
+		}
+		analyze(new LinkedHashSet<Object>(rootTypes), explanation);
+	}
+
+	/**
+	 * Returns the string representation of the explorer, parenthesized if it is a {@link Dot} or an {@link Or}.
+	 */
+	static String group(GraphExplorer explorer) {
+		if (explorer instanceof Dot || explorer instanceof Or) {
+			return "(" + explorer + ")";
+		}
+		return explorer.toString();
+	}
+
 }
\ No newline at end of file
@@ -1,10 +1,10 @@
 package sk.nociar.jpacloner.graphs;
 
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
-public class Literal extends GraphExplorer {
+public class Literal extends Step {
 	private final String literal;
 
 	public Literal(String literal) {
@@ -12,14 +12,69 @@ public class Literal extends GraphExplorer {
 	}
 
 	@Override
-	public Set<?> explore(Collection<?> entities, EntityExplorer entityExplorer) {
-		Set<Object> explored = new HashSet<Object>();
-		for (Object entity : entities) {
-			Collection<?> value = entityExplorer.explore(entity, literal);
-			if (value != null) {
-				explored.addAll(value);
+	void explore(Object entity, EntityExplorer entityExplorer, Set<Object> explored) {
+		Collection<?> value = entityExplorer.explore(entity, literal);
+		if (value != null) {
+			explored.addAll(value);
+		}
+	}
+
+	@Override
+	EntitySink open(final EntityExplorer entityExplorer, final EntitySink downstream) {
+		if (entityExplorer instanceof StreamingEntityExplorer) {
+			final StreamingEntityExplorer streamingExplorer = (StreamingEntityExplorer) entityExplorer;
+			return new EntitySink() {
+				@Override
+				public void push(Object entity) {
+					streamingExplorer.explore(entity, literal, downstream);
+				}
+			};
+		}
+		return new EntitySink() {
+			@Override
+			public void push(Object entity) {
+				Collection<?> value = entityExplorer.explore(entity, literal);
+				if (value != null) {
+					for (Object explored : value) {
+						downstream.push(explored);
+					}
+				}
+			}
+		};
+	}
+
+	@Override
+	Set<Object> analyze(Set<Object> types, PatternExplanation explanation) {
+		Set<Object> analyzed = new LinkedHashSet<Object>();
+		boolean isMatched = false;
+		for (Object type : types) {
+			Collection<?> targets = explanation.explore(type, literal);
+			if (targets != null) {
+				isMatched = true;
+				analyzed.addAll(targets);
 			}
 		}
-		return explored;
+		explanation.addMatch(literal, isMatched);
+		return analyzed;
+	}
+
+	@Override
+	GraphExplorer optimize() {
+		return this;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof Literal && literal.equals(((Literal) obj).literal);
+	}
+
+	@Override
+	public int hashCode() {
+		return literal.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return literal;
 	}
 }
@@ -0,0 +1,23 @@
+package sk.nociar.jpacloner.graphs;
+
+import java.util.Collection;
+
+/**
+ * Entity explorer which matches wildcard patterns itself, e.g. once per class of entities.
+ * 
+ * @author Miroslav Nociar
+ */
+public interface MatchingEntityExplorer extends EntityExplorer {
+
+	/**
+	 * Returns properties of an entity matched by the wildcard pattern, may not return the <code>null</code> value.
+	 * The result must be equal to {@link WildcardPattern#match(Collection)} of {@link #getProperties(Object)}.
+	 * 
+	 * @param entity
+	 *            the entity (node)
+	 * @param pattern
+	 *            the wildcard pattern
+	 * @return a collection of matched properties
+	 */
+	public Collection<String> getMatchedProperties(Object entity, WildcardPattern pattern);
+}
@@ -0,0 +1,64 @@
+package sk.nociar.jpacloner.graphs;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Optional path i.e. explored entities are the passed entities and entities explored by the child.
+ * The explorer is created by the optimization of prefixes: "a|a.b" -&gt; "a.(b)?".
+ */
+public final class Maybe extends GraphExplorer {
+	final GraphExplorer child;
+
+	public Maybe(GraphExplorer child) {
+		this.child = child;
+	}
+
+	@Override
+	public Set<?> explore(Collection<?> entities, EntityExplorer entityExplorer) {
+		Set<Object> explored = new HashSet<Object>(entities);
+		explored.addAll(child.explore(entities, entityExplorer));
+		return explored;
+	}
+
+	@Override
+	EntitySink open(EntityExplorer entityExplorer, final EntitySink downstream) {
+		final EntitySink sink = child.open(entityExplorer, downstream);
+		return new EntitySink() {
+			@Override
+			public void push(Object entity) {
+				downstream.push(entity);
+				sink.push(entity);
+			}
+		};
+	}
+
+	@Override
+	Set<Object> analyze(Set<Object> types, PatternExplanation explanation) {
+		Set<Object> analyzed = new LinkedHashSet<Object>(types);
+		analyzed.addAll(child.analyze(types, explanation));
+		return analyzed;
+	}
+
+	@Override
+	GraphExplorer optimize() {
+		return this;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof Maybe && child.equals(((Maybe) obj).child);
+	}
+
+	@Override
+	public int hashCode() {
+		return 47 * child.hashCode() + 3;
+	}
+
+	@Override
+	public String toString() {
+		return "(" + child + ")?";
+	}
+}
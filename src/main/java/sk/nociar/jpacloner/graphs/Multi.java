@@ -2,10 +2,12 @@ package sk.nociar.jpacloner.graphs;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.Set;
 
 public final class Multi extends GraphExplorer {
-	private final GraphExplorer child;
+	final GraphExplorer child;
 
 	public Multi(GraphExplorer child) {
 		this.child = child;
@@ -24,4 +26,77 @@ public final class Multi extends GraphExplorer {
 
 		return explored;
 	}
+
+	@Override
+	EntitySink open(EntityExplorer entityExplorer, final EntitySink downstream) {
+		// explored entities (prevention of cycles) & entities waiting for the next exploration
+		final Set<Object> explored = new HashSet<Object>();
+		final LinkedList<Object> queue = new LinkedList<Object>();
+		final EntitySink sink = child.open(entityExplorer, new EntitySink() {
+			@Override
+			public void push(Object entity) {
+				if (explored.add(entity)) {
+					downstream.push(entity);
+					queue.addLast(entity);
+				}
+			}
+		});
+		return new EntitySink() {
+			@Override
+			public void push(Object entity) {
+				sink.push(entity);
+				while (!queue.isEmpty()) {
+					sink.push(queue.removeFirst());
+				}
+			}
+		};
+	}
+
+	@Override
+	Set<Object> analyze(Set<Object> types, PatternExplanation explanation) {
+		Set<Object> analyzed = new LinkedHashSet<Object>();
+		Set<Object> next = types;
+		boolean isCycle = false;
+		do {
+			next = child.analyze(next, explanation);
+			for (Object type : next) {
+				if (types.contains(type) || analyzed.contains(type)) {
+					// the type is revisited, the depth is bounded only by data
+					isCycle = true;
+				}
+			}
+			next.removeAll(analyzed);
+			analyzed.addAll(next);
+		} while (!next.isEmpty());
+		
+		if (isCycle) {
+			explanation.addUnboundedCycle(toString());
+		}
+		return analyzed;
+	}
+
+	@Override
+	GraphExplorer optimize() {
+		GraphExplorer optimized = child.optimize();
+		if (optimized instanceof Multi || optimized instanceof Terminator) {
+			// (a+)+ -> a+, (a$)+ -> a$
+			return optimized;
+		}
+		return new Multi(optimized);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof Multi && child.equals(((Multi) obj).child);
+	}
+
+	@Override
+	public int hashCode() {
+		return 41 * child.hashCode() + 1;
+	}
+
+	@Override
+	public String toString() {
+		return group(child) + "+";
+	}
 }
\ No newline at end of file
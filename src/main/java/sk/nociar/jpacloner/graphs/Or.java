@@ -1,12 +1,17 @@
 package sk.nociar.jpacloner.graphs;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public final class Or extends GraphExplorer {
-	private final GraphExplorer a;
-	private final GraphExplorer b;
+	final GraphExplorer a;
+	final GraphExplorer b;
 
 	public Or(GraphExplorer a, GraphExplorer b) {
 		this.a = a;
@@ -20,4 +25,127 @@ public final class Or extends GraphExplorer {
 		explored.addAll(b.explore(entities, entityExplorer));
 		return explored;
 	}
+
+	@Override
+	EntitySink open(EntityExplorer entityExplorer, EntitySink downstream) {
+		final EntitySink sa = a.open(entityExplorer, downstream);
+		final EntitySink sb = b.open(entityExplorer, downstream);
+		return new EntitySink() {
+			@Override
+			public void push(Object entity) {
+				sa.push(entity);
+				sb.push(entity);
+			}
+		};
+	}
+
+	@Override
+	Set<Object> analyze(Set<Object> types, PatternExplanation explanation) {
+		Set<Object> analyzed = a.analyze(types, explanation);
+		analyzed.addAll(b.analyze(types, explanation));
+		return analyzed;
+	}
+
+	@Override
+	GraphExplorer optimize() {
+		List<GraphExplorer> branches = new ArrayList<GraphExplorer>();
+		addBranches(this, branches);
+		return or(branches);
+	}
+
+	/**
+	 * Adds optimized branches of nested {@link Or}s.
+	 */
+	private static void addBranches(GraphExplorer explorer, List<GraphExplorer> branches) {
+		if (explorer instanceof Or) {
+			addBranches(((Or) explorer).a, branches);
+			addBranches(((Or) explorer).b, branches);
+			return;
+		}
+		GraphExplorer optimized = explorer.optimize();
+		if (optimized instanceof Or) {
+			addBranches(((Or) optimized).a, branches);
+			addBranches(((Or) optimized).b, branches);
+		} else {
+			branches.add(optimized);
+		}
+	}
+
+	/**
+	 * Creates an optimized {@link Or} of optimized (non {@link Or}) branches.
+	 */
+	private static GraphExplorer or(List<GraphExplorer> branches) {
+		// remove duplicates
+		List<GraphExplorer> unique = new ArrayList<GraphExplorer>(new LinkedHashSet<GraphExplorer>(branches));
+		// merge terminators: a$|b$ -> (a|b)$
+		List<GraphExplorer> terminated = new ArrayList<GraphExplorer>();
+		for (GraphExplorer branch : unique) {
+			if (branch instanceof Terminator) {
+				terminated.add(((Terminator) branch).child);
+			}
+		}
+		if (terminated.size() > 1) {
+			List<GraphExplorer> merged = new ArrayList<GraphExplorer>();
+			for (GraphExplorer branch : unique) {
+				if (!(branch instanceof Terminator)) {
+					merged.add(branch);
+				} else if (terminated != null) {
+					merged.add(new Terminator(or(terminated)));
+					terminated = null;
+				}
+			}
+			unique = merged;
+		}
+		// factor common prefixes: a.b|a.c -> a.(b|c), a|a.b -> a.(b)?
+		Map<GraphExplorer, List<GraphExplorer>> headToTails = new LinkedHashMap<GraphExplorer, List<GraphExplorer>>();
+		for (GraphExplorer branch : unique) {
+			GraphExplorer head = branch instanceof Dot ? ((Dot) branch).a : branch;
+			GraphExplorer tail = branch instanceof Dot ? ((Dot) branch).b : null;
+			List<GraphExplorer> tails = headToTails.get(head);
+			if (tails == null) {
+				tails = new ArrayList<GraphExplorer>();
+				headToTails.put(head, tails);
+			}
+			tails.add(tail);
+		}
+		List<GraphExplorer> factored = new ArrayList<GraphExplorer>();
+		for (Map.Entry<GraphExplorer, List<GraphExplorer>> entry : headToTails.entrySet()) {
+			GraphExplorer head = entry.getKey();
+			List<GraphExplorer> tails = entry.getValue();
+			if (tails.size() == 1) {
+				GraphExplorer tail = tails.get(0);
+				factored.add(tail == null ? head : new Dot(head, tail));
+				continue;
+			}
+			// NOTE duplicates are removed, i.e. at most one tail is empty
+			boolean isOptional = tails.remove(null);
+			GraphExplorer rest = or(tails);
+			factored.add(Dot.dot(head, isOptional ? new Maybe(rest) : rest));
+		}
+		// right associative
+		GraphExplorer explorer = factored.get(factored.size() - 1);
+		for (int i = factored.size() - 2; i >= 0; i--) {
+			explorer = new Or(factored.get(i), explorer);
+		}
+		return explorer;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Or)) {
+			return false;
+		}
+		Or other = (Or) obj;
+		return a.equals(other.a) && b.equals(other.b);
+	}
+
+	@Override
+	public int hashCode() {
+		return 37 * a.hashCode() + b.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return a + "|" + b;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,169 @@
+package sk.nociar.jpacloner.graphs;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Result of a static walk of patterns, see {@link GraphExplorer#explain(Collection, PatternExplanation)}.
+ * The static walk explores <b>types</b> instead of entities, i.e. the passed type explorer returns 
+ * target types of a property instead of entities. The explanation collects:
+ * <ul>
+ * <li>reachable types and explored relations of each type,</li>
+ * <li>properties and wildcards of patterns which do not match any relation,</li>
+ * <li>unbounded cycles, i.e. the plus "+" operator revisiting an already explored type,</li>
+ * <li>estimated query fan-out, i.e. number of distinct relations which may be loaded lazily.</li>
+ * </ul>
+ * The explanation is cheap (no entity is touched) so it can be computed at startup for each 
+ * configured pattern. Please note that the walk uses <b>declared</b> types, relations of subclasses 
+ * are not considered.
+ * 
+ * @author Miroslav Nociar
+ */
+public final class PatternExplanation {
+	
+	private final EntityExplorer typeExplorer;
+	
+	private final Map<Object, Set<String>> relations = new LinkedHashMap<Object, Set<String>>();
+	
+	private final Set<String> unmatched = new LinkedHashSet<String>();
+
+	private final Set<String> matched = new LinkedHashSet<String>();
+
+	private final Set<String> unboundedCycles = new LinkedHashSet<String>();
+	
+	private int queryFanOut = 0;
+
+	/**
+	 * Creates an empty explanation.
+	 * 
+	 * @param typeExplorer
+	 *            explorer of types i.e. nodes are types and edges are relations
+	 */
+	public PatternExplanation(EntityExplorer typeExplorer) {
+		if (typeExplorer == null) {
+			throw new NullPointerException();
+		}
+		this.typeExplorer = typeExplorer;
+	}
+	
+	EntityExplorer getTypeExplorer() {
+		return typeExplorer;
+	}
+
+	void addType(Object type) {
+		if (type != null && !relations.containsKey(type)) {
+			relations.put(type, new LinkedHashSet<String>());
+		}
+	}
+
+	/**
+	 * Explores a property of a type and records the relation.
+	 */
+	Collection<?> explore(Object type, String property) {
+		Collection<?> targets = typeExplorer.explore(type, property);
+		if (targets == null) {
+			return null;
+		}
+		addType(type);
+		if (relations.get(type).add(property) && type instanceof Class) {
+			// each distinct relation of an entity class may cost a query
+			queryFanOut++;
+		}
+		for (Object target : targets) {
+			addType(target);
+		}
+		return targets;
+	}
+	
+	void addMatch(String part, boolean isMatched) {
+		if (isMatched) {
+			matched.add(part);
+			unmatched.remove(part);
+		} else if (!matched.contains(part)) {
+			unmatched.add(part);
+		}
+	}
+
+	void addUnboundedCycle(String part) {
+		unboundedCycles.add(part);
+	}
+	
+	/**
+	 * Returns all reachable types (including roots).
+	 */
+	public Set<Object> getTypes() {
+		return Collections.unmodifiableSet(relations.keySet());
+	}
+	
+	/**
+	 * Returns all reachable types which are classes (including roots).
+	 */
+	public List<Class<?>> getClasses() {
+		List<Class<?>> classes = new ArrayList<Class<?>>();
+		for (Object type : relations.keySet()) {
+			if (type instanceof Class) {
+				classes.add((Class<?>) type);
+			}
+		}
+		return classes;
+	}
+
+	/**
+	 * Returns explored relations of a type.
+	 */
+	public Set<String> getRelations(Object type) {
+		Set<String> set = relations.get(type);
+		return set == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(set);
+	}
+
+	/**
+	 * Returns literals and wildcards of patterns which do not match any relation.
+	 */
+	public Set<String> getUnmatched() {
+		return Collections.unmodifiableSet(unmatched);
+	}
+
+	/**
+	 * Returns sub-patterns with the plus "+" operator which revisit an already explored type, 
+	 * i.e. the depth of exploration is bounded only by data.
+	 */
+	public Set<String> getUnboundedCycles() {
+		return Collections.unmodifiableSet(unboundedCycles);
+	}
+
+	/**
+	 * Returns <code>true</code> if there is an unbounded cycle.
+	 */
+	public boolean isUnbounded() {
+		return !unboundedCycles.isEmpty();
+	}
+
+	/**
+	 * Returns the estimated query fan-out, i.e. the number of distinct relations of entity classes 
+	 * which may be loaded lazily. Each of them may cost a query per explored entity (or per level 
+	 * of an unbounded cycle).
+	 */
+	public int getQueryFanOut() {
+		return queryFanOut;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<Object, Set<String>> entry : relations.entrySet()) {
+			Object type = entry.getKey();
+			sb.append(type instanceof Class ? ((Class<?>) type).getName() : type);
+			sb.append(' ').append(entry.getValue()).append('\n');
+		}
+		sb.append("unmatched: ").append(unmatched).append('\n');
+		sb.append("unbounded cycles: ").append(unboundedCycles).append('\n');
+		sb.append("query fan-out: ").append(queryFanOut);
+		return sb.toString();
+	}
+}
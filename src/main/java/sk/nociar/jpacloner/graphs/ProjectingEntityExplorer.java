@@ -0,0 +1,22 @@
+package sk.nociar.jpacloner.graphs;
+
+import java.util.Set;
+
+/**
+ * Entity explorer which supports projections of basic properties, e.g. "employees{name,email}".
+ * 
+ * @author Miroslav Nociar
+ */
+public interface ProjectingEntityExplorer extends EntityExplorer {
+
+	/**
+	 * Restricts basic properties of an explored entity to the projected ones. Multiple projections 
+	 * of the same entity are merged.
+	 * 
+	 * @param entity
+	 *            the explored entity (node)
+	 * @param properties
+	 *            the projected basic properties
+	 */
+	public void project(Object entity, Set<String> properties);
+}
@@ -0,0 +1,84 @@
+package sk.nociar.jpacloner.graphs;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.SortedSet;
+
+/**
+ * Projection of basic properties of explored entities e.g. "employees{name,email}". The projection 
+ * is passed to the {@link ProjectingEntityExplorer}, other explorers ignore it.
+ */
+public final class Projection extends GraphExplorer {
+	final GraphExplorer child;
+	final SortedSet<String> properties;
+
+	public Projection(GraphExplorer child, SortedSet<String> properties) {
+		this.child = child;
+		this.properties = Collections.unmodifiableSortedSet(properties);
+	}
+
+	@Override
+	public Set<?> explore(Collection<?> entities, EntityExplorer entityExplorer) {
+		Set<?> explored = child.explore(entities, entityExplorer);
+		if (entityExplorer instanceof ProjectingEntityExplorer) {
+			ProjectingEntityExplorer projectingExplorer = (ProjectingEntityExplorer) entityExplorer;
+			for (Object entity : explored) {
+				projectingExplorer.project(entity, properties);
+			}
+		}
+		return explored;
+	}
+
+	@Override
+	EntitySink open(EntityExplorer entityExplorer, final EntitySink downstream) {
+		if (!(entityExplorer instanceof ProjectingEntityExplorer)) {
+			return child.open(entityExplorer, downstream);
+		}
+		final ProjectingEntityExplorer projectingExplorer = (ProjectingEntityExplorer) entityExplorer;
+		return child.open(entityExplorer, new EntitySink() {
+			@Override
+			public void push(Object entity) {
+				projectingExplorer.project(entity, properties);
+				downstream.push(entity);
+			}
+		});
+	}
+
+	@Override
+	Set<Object> analyze(Set<Object> types, PatternExplanation explanation) {
+		return child.analyze(types, explanation);
+	}
+
+	@Override
+	GraphExplorer optimize() {
+		return new Projection(child.optimize(), properties);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Projection)) {
+			return false;
+		}
+		Projection other = (Projection) obj;
+		return child.equals(other.child) && properties.equals(other.properties);
+	}
+
+	@Override
+	public int hashCode() {
+		return 47 * child.hashCode() + properties.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(group(child)).append('{');
+		for (Iterator<String> i = properties.iterator(); i.hasNext();) {
+			sb.append(i.next());
+			if (i.hasNext()) {
+				sb.append(',');
+			}
+		}
+		return sb.append('}').toString();
+	}
+}
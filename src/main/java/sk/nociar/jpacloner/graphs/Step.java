@@ -0,0 +1,79 @@
+package sk.nociar.jpacloner.graphs;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Single step of a path (a literal or a wildcard) exploring entities one by one. Large frontiers are explored in
+ * parallel if the entity explorer is a {@link ConcurrentEntityExplorer}.
+ * 
+ * @author Miroslav Nociar
+ */
+abstract class Step extends GraphExplorer {
+
+	/**
+	 * Explores a single entity, adds explored entities to the set.
+	 */
+	abstract void explore(Object entity, EntityExplorer entityExplorer, Set<Object> explored);
+
+	@Override
+	public Set<?> explore(Collection<?> entities, EntityExplorer entityExplorer) {
+		if (entityExplorer instanceof ConcurrentEntityExplorer) {
+			ConcurrentEntityExplorer concurrentExplorer = (ConcurrentEntityExplorer) entityExplorer;
+			if (entities.size() >= concurrentExplorer.getSplitThreshold() && concurrentExplorer.getParallelism() > 1) {
+				return exploreConcurrently(entities, concurrentExplorer);
+			}
+		}
+		Set<Object> explored = new HashSet<Object>();
+		for (Object entity : entities) {
+			explore(entity, entityExplorer, explored);
+		}
+		return explored;
+	}
+
+	private Set<?> exploreConcurrently(Collection<?> entities, final ConcurrentEntityExplorer entityExplorer) {
+		final Set<Object> explored = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+		final List<Object> frontier = new ArrayList<Object>(entities);
+		final int parallelism = entityExplorer.getParallelism();
+		int size = (frontier.size() + parallelism - 1) / parallelism;
+		List<Callable<Void>> chunks = new ArrayList<Callable<Void>>(parallelism);
+		for (int from = 0; from < frontier.size(); from += size) {
+			final List<Object> chunk = frontier.subList(from, Math.min(frontier.size(), from + size));
+			chunks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (Object entity : chunk) {
+						explore(entity, entityExplorer, explored);
+					}
+					return null;
+				}
+			});
+		}
+		try {
+			for (Future<Void> future : entityExplorer.getExecutor().invokeAll(chunks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Exploration interrupted", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+		return explored;
+	}
+}
@@ -0,0 +1,22 @@
+package sk.nociar.jpacloner.graphs;
+
+/**
+ * Entity explorer which can push explored entities directly to a sink, i.e. without 
+ * creating a collection of explored entities.
+ * 
+ * @author Miroslav Nociar
+ */
+public interface StreamingEntityExplorer extends EntityExplorer {
+
+	/**
+	 * Explore a property of an entity and push explored entities to the sink.
+	 * 
+	 * @param entity
+	 *            the entity (node)
+	 * @param property
+	 *            the property (edge)
+	 * @param sink
+	 *            receiver of explored entities
+	 */
+	public void explore(Object entity, String property, EntitySink sink);
+}
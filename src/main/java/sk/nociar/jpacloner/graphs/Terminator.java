@@ -2,10 +2,11 @@ package sk.nociar.jpacloner.graphs;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 public final class Terminator extends GraphExplorer {
-	private final GraphExplorer child;
+	final GraphExplorer child;
 
 	public Terminator(GraphExplorer child) {
 		this.child = child;
@@ -17,4 +18,41 @@ public final class Terminator extends GraphExplorer {
 		child.explore(entities, entityExplorer);
 		return Collections.emptySet();
 	}
+
+	@Override
+	EntitySink open(EntityExplorer entityExplorer, EntitySink downstream) {
+		// explore the node and push nothing
+		return child.open(entityExplorer, EntitySink.DISCARD);
+	}
+
+	@Override
+	Set<Object> analyze(Set<Object> types, PatternExplanation explanation) {
+		child.analyze(types, explanation);
+		return new LinkedHashSet<Object>();
+	}
+
+	@Override
+	GraphExplorer optimize() {
+		GraphExplorer optimized = child.optimize();
+		if (optimized instanceof Terminator) {
+			// a$$ -> a$
+			return optimized;
+		}
+		return new Terminator(optimized);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof Terminator && child.equals(((Terminator) obj).child);
+	}
+
+	@Override
+	public int hashCode() {
+		return 43 * child.hashCode() + 2;
+	}
+
+	@Override
+	public String toString() {
+		return group(child) + "$";
+	}
 }
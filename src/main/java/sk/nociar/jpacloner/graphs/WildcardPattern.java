@@ -1,67 +1,155 @@
 package sk.nociar.jpacloner.graphs;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-public class WildcardPattern extends GraphExplorer {
-	private static final Pattern p = Pattern.compile("\\*|\\?|[^\\*\\?]+");
-	private static final Map<String, WildcardPattern> cache = new HashMap<String, WildcardPattern>();
+public class WildcardPattern extends Step {
+	private final String wildcard;
 	
-	private final Pattern pattern;
-	
-	private final ConcurrentMap<String, Boolean> isMatched = new ConcurrentHashMap<String, Boolean>();
+	private final char[] glob;
 
 	private WildcardPattern(String s) {
-		StringBuilder sb = new StringBuilder("^");
-		Matcher m = p.matcher(s);
-		while (m.find()) {
-			String token = m.group();
-			if ("?".equals(token)) {
-				sb.append(".");
-			} else if ("*".equals(token)) {
-				sb.append(".*?"); // Reluctant quantifier
+		wildcard = s;
+		glob = s.toCharArray();
+	}
+	
+	/**
+	 * Returns the wildcard pattern from the cache of compiled patterns, see {@link GraphExplorer#getCache()}.
+	 */
+	public static WildcardPattern get(String s) {
+		GraphExplorer explorer = cache.get(s);
+		if (explorer instanceof WildcardPattern) {
+			return (WildcardPattern) explorer;
+		}
+		WildcardPattern wildcardPattern = new WildcardPattern(s);
+		explorer = cache.putIfAbsent(s, wildcardPattern);
+		return explorer instanceof WildcardPattern ? (WildcardPattern) explorer : wildcardPattern;
+	}
+	
+	/**
+	 * Allocation free glob matching: star "*" matches zero or more characters, 
+	 * question mark "?" matches exactly one character.
+	 */
+	public boolean matches(String s) {
+		int p = 0;
+		int i = 0;
+		int star = -1;
+		int mark = 0;
+		while (i < s.length()) {
+			if (p < glob.length && (glob[p] == '?' || glob[p] == s.charAt(i))) {
+				p++;
+				i++;
+			} else if (p < glob.length && glob[p] == '*') {
+				// remember the star, try to match zero characters first
+				star = p++;
+				mark = i;
+			} else if (star >= 0) {
+				// backtrack, the last star matches one more character
+				p = star + 1;
+				i = ++mark;
 			} else {
-				sb.append(Pattern.quote(token));
+				return false;
+			}
+		}
+		while (p < glob.length && glob[p] == '*') {
+			p++;
+		}
+		return p == glob.length;
+	}
+	
+	/**
+	 * Returns properties matched by this pattern.
+	 */
+	public List<String> match(Collection<String> properties) {
+		List<String> matched = new ArrayList<String>();
+		for (String property : properties) {
+			if (matches(property)) {
+				matched.add(property);
 			}
 		}
-		sb.append("$");
-		pattern = Pattern.compile(sb.toString());
+		return matched;
 	}
 	
-	public static synchronized WildcardPattern get(String s) {
-		WildcardPattern wildcardPattern = cache.get(s);
-		if (wildcardPattern == null) {
-			wildcardPattern = new WildcardPattern(s);
-			cache.put(s, wildcardPattern);
+	/**
+	 * Returns matched properties of the entity, a {@link MatchingEntityExplorer} can cache matches.
+	 */
+	private Collection<String> getMatched(Object entity, EntityExplorer entityExplorer) {
+		if (entityExplorer instanceof MatchingEntityExplorer) {
+			return ((MatchingEntityExplorer) entityExplorer).getMatchedProperties(entity, this);
 		}
-		return wildcardPattern;
+		return match(entityExplorer.getProperties(entity));
 	}
 
 	@Override
-	public Set<?> explore(Collection<?> entities, EntityExplorer entityExplorer) {
-		Set<Object> explored = new HashSet<Object>();
-		for (Object entity : entities) {
-			for (String property : entityExplorer.getProperties(entity)) {
-				Boolean matches = isMatched.get(property);
-				if (matches == null) {
-					matches = pattern.matcher(property).matches();
-					isMatched.put(property, matches);
-				}
-				if (matches) {
+	void explore(Object entity, EntityExplorer entityExplorer, Set<Object> explored) {
+		for (String property : getMatched(entity, entityExplorer)) {
+			Collection<?> value = entityExplorer.explore(entity, property);
+			if (value != null) {
+				explored.addAll(value);
+			}
+		}
+	}
+
+	@Override
+	EntitySink open(final EntityExplorer entityExplorer, final EntitySink downstream) {
+		final StreamingEntityExplorer streamingExplorer = entityExplorer instanceof StreamingEntityExplorer ? 
+				(StreamingEntityExplorer) entityExplorer : null;
+		return new EntitySink() {
+			@Override
+			public void push(Object entity) {
+				for (String property : getMatched(entity, entityExplorer)) {
+					if (streamingExplorer != null) {
+						streamingExplorer.explore(entity, property, downstream);
+						continue;
+					}
 					Collection<?> value = entityExplorer.explore(entity, property);
 					if (value != null) {
-						explored.addAll(value);
+						for (Object explored : value) {
+							downstream.push(explored);
+						}
 					}
 				}
 			}
+		};
+	}
+
+	@Override
+	Set<Object> analyze(Set<Object> types, PatternExplanation explanation) {
+		Set<Object> analyzed = new LinkedHashSet<Object>();
+		boolean isMatched = false;
+		for (Object type : types) {
+			for (String property : getMatched(type, explanation.getTypeExplorer())) {
+				Collection<?> targets = explanation.explore(type, property);
+				if (targets != null) {
+					isMatched = true;
+					analyzed.addAll(targets);
+				}
+			}
 		}
-		return explored;
+		explanation.addMatch(wildcard, isMatched);
+		return analyzed;
+	}
+
+	@Override
+	GraphExplorer optimize() {
+		return this;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof WildcardPattern && wildcard.equals(((WildcardPattern) obj).wildcard);
+	}
+
+	@Override
+	public int hashCode() {
+		return wildcard.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return wildcard;
 	}
 }
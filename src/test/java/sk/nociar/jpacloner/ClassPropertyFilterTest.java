@@ -0,0 +1,76 @@
+package sk.nociar.jpacloner;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.Id;
+import javax.persistence.Version;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import sk.nociar.jpacloner.entities.Node;
+
+public class ClassPropertyFilterTest {
+
+	private ProxyTestSupport support;
+
+	@Before
+	public void setUp() {
+		support = new ProxyTestSupport();
+		support.initialize();
+	}
+
+	@Test
+	public void testClassPropertyFilter() {
+		final AtomicInteger calls = new AtomicInteger();
+		ClassPropertyFilter filter = new ClassPropertyFilter() {
+			@Override
+			public boolean test(Class<?> jpaClass, String property) {
+				calls.incrementAndGet();
+				return !"name".equals(property);
+			}
+		};
+		Node original = support.getOriginal();
+		Node clone = JpaCloner.clone(original, filter, "(children.value.child)+");
+		Assert.assertNull(clone.getName());
+		Assert.assertFalse(clone.getChildren().isEmpty());
+		int evaluated = calls.get();
+		// the filter is evaluated once per class
+		JpaCloner.clone(original, filter, "(children.value.child)+");
+		Assert.assertEquals(evaluated, calls.get());
+		Assert.assertFalse(filter.test(original, "name"));
+		Assert.assertTrue(filter.test(original, "children"));
+		// compositions
+		PropertyFilter entityFilter = new PropertyFilter() {
+			@Override
+			public boolean test(Object entity, String property) {
+				return true;
+			}
+		};
+		Assert.assertTrue(PropertyFilters.getAnnotationFilter(Id.class, Version.class) instanceof ClassPropertyFilter);
+		Assert.assertEquals(PropertyFilters.getAnnotationFilter(Id.class, Version.class), PropertyFilters.getAnnotationFilter(Id.class, Version.class));
+		PropertyFilter composed = PropertyFilters.getComposedFilter(filter, entityFilter);
+		Assert.assertFalse(composed instanceof ClassPropertyFilter);
+		Assert.assertNull(JpaCloner.clone(original, composed, "children").getName());
+		// filters created per call: a full cache evicts masks, a missed property is tested directly
+		JpaClassInfo classInfo = JpaClassInfo.get(Node.class);
+		for (int i = 0; i < 200; i++) {
+			final AtomicInteger perCallCalls = new AtomicInteger();
+			ClassPropertyFilter perCall = new ClassPropertyFilter() {
+				@Override
+				public boolean test(Class<?> jpaClass, String property) {
+					perCallCalls.incrementAndGet();
+					return !"name".equals(property);
+				}
+			};
+			for (int j = 0; j < 100; j++) {
+				Assert.assertFalse(classInfo.test(perCall, "name"));
+				Assert.assertTrue(classInfo.test(perCall, "children"));
+			}
+			// at most one mask is built per filter
+			Assert.assertTrue(perCallCalls.get() < 100);
+		}
+		Assert.assertFalse(classInfo.test(filter, "name"));
+	}
+}
@@ -1,7 +1,25 @@
 package sk.nociar.jpacloner;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.persistence.Transient;
 
@@ -9,6 +27,8 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import sk.nociar.jpacloner.ProxyTestSupport.EdgeProxy;
+import sk.nociar.jpacloner.ProxyTestSupport.NodeProxy;
 import sk.nociar.jpacloner.entities.A;
 import sk.nociar.jpacloner.entities.B;
 import sk.nociar.jpacloner.entities.Bar;
@@ -19,72 +39,15 @@ import sk.nociar.jpacloner.entities.Edge;
 import sk.nociar.jpacloner.entities.Foo;
 import sk.nociar.jpacloner.entities.Node;
 import sk.nociar.jpacloner.entities.Point;
+import sk.nociar.jpacloner.graphs.PatternExplanation;
 
 public class JpaClonerProxyTest {
 	
-	private static int idGenerator = 0;
-	
-	private static class EdgeProxy extends Edge {
-		EdgeProxy() {
-			setId(idGenerator++);
-		}
-	}
-	
-	private static class NodeProxy extends Node {
-		NodeProxy() {
-			setId(idGenerator++);
-		}
-	}
-	
-	private static class FooProxy extends Foo {
-		FooProxy() {
-			setId(idGenerator++);
-		}
-	}
-	
-	private static class BarProxy extends Bar {
-		BarProxy() {
-			setId(idGenerator++);
-		}
-	}
-
-	private static class BazProxy extends Baz {
-		BazProxy() {
-			setId(idGenerator++);
-		}
-	}
-
-	private JpaClonerTestSupport support;
+	private ProxyTestSupport support;
 	
 	@Before
 	public void setUp() {
-		support = new JpaClonerTestSupport() {
-			@Override
-			protected Node createNode() {
-				return new NodeProxy();
-			}
-			@Override
-			protected Edge createEdge() {
-				return new EdgeProxy();
-			}
-			@Override
-			protected Point createPoint() {
-				return new Point(1, 2);
-			}
-			@Override
-			protected Foo createFoo() {
-				return new FooProxy();
-			}
-			@Override
-			protected Bar createBar() {
-				return new BarProxy();
-			}
-			@Override
-			protected Baz createBaz() {
-				return new BazProxy();
-			}
-		};
-		
+		support = new ProxyTestSupport();
 		support.initialize();
 	}
 
@@ -186,4 +149,470 @@ public class JpaClonerProxyTest {
 			Assert.assertTrue(b.counter_c < b.counter_hashcode);
 		}
 	}
+
+	@Test
+	public void testParallelClone() {
+		A a = new A();
+		a.setId(1);
+		C c = new C();
+		c.setId(1);
+		Set<B> set = new HashSet<B>();
+		for (int i = 0; i < 100; i++) {
+			B b = new B();
+			b.setId(i);
+			b.setA(a);
+			b.setC(c);
+			set.add(b);
+		}
+		a.setSet(set);
+		
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			CloneOptions options = new CloneOptions(PropertyFilters.getAnnotationFilter(Transient.class));
+			options.setExecutor(executor);
+			options.setParallelThreshold(0);
+			options.setParallelism(4);
+			A a_clone = JpaCloner.clone(a, options, "set.(a|c)");
+			Assert.assertNotSame(a, a_clone);
+			Assert.assertEquals(100, a_clone.getSet().size());
+			C c_clone = a_clone.getSet().iterator().next().getC();
+			Assert.assertNotSame(c, c_clone);
+			for (B b : a_clone.getSet()) {
+				Assert.assertSame(a_clone, b.getA());
+				Assert.assertSame(c_clone, b.getC());
+				Assert.assertTrue(b.counter_a < b.counter_hashcode);
+				Assert.assertTrue(b.counter_c < b.counter_hashcode);
+			}
+			// requested lazy properties are checked before the parallel phases
+			List<DummyEntity> dummies = new ArrayList<DummyEntity>();
+			for (int i = 0; i < 10; i++) {
+				DummyEntity dummy = new DummyEntity();
+				dummy.setId(i);
+				dummy.content = new byte[] { (byte) i };
+				dummies.add(dummy);
+			}
+			List<DummyEntity> clones = JpaCloner.clone(dummies, options, "content");
+			Assert.assertArrayEquals(new byte[] { 9 }, clones.get(9).content);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testSharedParentExplore() {
+		// edges of a hub share the parent, the back reference must not multiply paths
+		Node hub = new NodeProxy();
+		int n = 100;
+		for (int i = 0; i < n; i++) {
+			Edge edge = new EdgeProxy();
+			edge.setPosition(i);
+			edge.setParent(hub);
+			edge.setChild(new NodeProxy());
+			hub.getChildren().put(i, edge);
+		}
+		final AtomicInteger calls = new AtomicInteger();
+		PropertyFilter filter = new PropertyFilter() {
+			@Override
+			public boolean test(Object entity, String property) {
+				calls.incrementAndGet();
+				return true;
+			}
+		};
+		JpaExplorer explorer = JpaExplorer.doExplore(hub, filter, "children.value.parent.children.value.parent.children.value");
+		Assert.assertEquals(n, explorer.getEntities(Edge.class).size());
+		Assert.assertTrue("calls: " + calls.get(), calls.get() < 10 * n);
+	}
+
+	@Test
+	public void testConcurrentExplore() {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			CloneOptions options = new CloneOptions();
+			options.setExecutor(executor);
+			options.setConcurrentExploration(true);
+			options.setParallelism(4);
+			options.setSplitThreshold(1);
+			options.setRecordingParents(true);
+			CloneOptions sequentialOptions = new CloneOptions();
+			sequentialOptions.setRecordingParents(true);
+			Node original = support.getOriginal();
+			JpaExplorer sequential = JpaExplorer.doExplore(Collections.singleton(original), sequentialOptions, "*+");
+			for (int i = 0; i < 10; i++) {
+				JpaExplorer concurrent = JpaExplorer.doExplore(Collections.singleton(original), options, "*+");
+				Assert.assertEquals(sequential.entities, concurrent.entities);
+				// deterministic parent links
+				Assert.assertEquals(sequential.parents.keySet(), concurrent.parents.keySet());
+				for (Object object : sequential.parents.keySet()) {
+					Assert.assertSame(sequential.parents.get(object).getParent(), concurrent.parents.get(object).getParent());
+					Assert.assertEquals(sequential.parents.get(object).getProperty(), concurrent.parents.get(object).getProperty());
+				}
+			}
+			options.setRecordingParents(false);
+			Node clone = JpaCloner.clone(original, options, "(children.value.child)+.(foo|baz).bar");
+			JpaExplorer explorer = JpaExplorer.doExplore(Collections.singleton(clone), options, "*+");
+			JpaClonerTestSupport.assertCloned(explorer, Node.class, 9);
+			JpaClonerTestSupport.assertCloned(explorer, Edge.class, 10);
+			JpaClonerTestSupport.assertCloned(explorer, Bar.class, 1);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testCollectionFactories() {
+		// sorted (linear build) & unsorted (fallback) elements
+		CollectionFactory factory = CollectionFactories.getDefaultFactory();
+		SortedSet<Object> sorted = (SortedSet<Object>) factory.newCollection(new TreeSet<Integer>(), new Object[] {1, 2, 3});
+		Assert.assertEquals(Arrays.asList(1, 2, 3), new ArrayList<Object>(sorted));
+		sorted = (SortedSet<Object>) factory.newCollection(new TreeSet<Integer>(Collections.reverseOrder()), new Object[] {1, 3, 2});
+		Assert.assertEquals(Arrays.asList(3, 2, 1), new ArrayList<Object>(sorted));
+		SortedMap<Object, Object> sortedMap = (SortedMap<Object, Object>) factory.newMap(new TreeMap<Integer, String>(), 
+				new Object[] {1, 2}, new Object[] {"a", "b"});
+		Assert.assertEquals("b", sortedMap.get(2));
+		Assert.assertEquals(Integer.valueOf(1), sortedMap.firstKey());
+		// compact collections
+		factory = CollectionFactories.getCompactFactory();
+		Object[] elements = new Object[20];
+		for (int i = 0; i < elements.length; i++) {
+			elements[i] = "e" + i;
+		}
+		Collection<Object> set = factory.newCollection(new HashSet<Object>(), elements);
+		Assert.assertEquals(new HashSet<Object>(Arrays.asList(elements)), set);
+		Assert.assertTrue(set.contains("e19"));
+		Assert.assertFalse(set.contains("e20"));
+		Map<Object, Object> map = factory.newMap(new HashMap<Object, Object>(), new Object[] {"a", null}, new Object[] {1, 2});
+		Assert.assertEquals(2, map.get(null));
+		Assert.assertEquals(1, map.get("a"));
+		// equal elements (e.g. clones which became equal) are removed
+		Object[] duplicates = new Object[40];
+		for (int i = 0; i < duplicates.length; i++) {
+			duplicates[i] = new String("e" + (i % 20));
+		}
+		set = factory.newCollection(new HashSet<Object>(), duplicates);
+		Assert.assertEquals(20, set.size());
+		Assert.assertEquals(Arrays.asList(elements), new ArrayList<Object>(set));
+		set = factory.newCollection(new HashSet<Object>(), new Object[] {"a", "b", new String("a")});
+		Assert.assertEquals(Arrays.asList("a", "b"), new ArrayList<Object>(set));
+		map = factory.newMap(new HashMap<Object, Object>(), duplicates, duplicates.clone());
+		Assert.assertEquals(20, map.size());
+		Assert.assertSame(duplicates[39], map.get("e19"));
+		List<Object> list = (List<Object>) factory.newCollection(new ArrayList<Object>(), elements);
+		try {
+			list.add("x");
+			Assert.fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		
+		// clone with the compact factory
+		Node original = support.getOriginal();
+		original.setChildren(new TreeMap<Integer, Edge>(original.getChildren()));
+		CloneOptions options = new CloneOptions();
+		options.setCollectionFactory(CollectionFactories.getCompactFactory());
+		Node clone = JpaCloner.clone(original, options, "(children.value.child)+");
+		Assert.assertTrue(clone.getChildren() instanceof SortedMap);
+		Assert.assertEquals(original.getChildren().keySet(), clone.getChildren().keySet());
+		Edge edge = clone.getChildren().values().iterator().next();
+		Assert.assertEquals(edge.getChild().getChildren().size(), 3);
+		try {
+			clone.getChildren().clear();
+			Assert.fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testPrimitiveCollections() {
+		DummyEntity dummy = new DummyEntity();
+		dummy.values = new ArrayList<Integer>(Arrays.asList(3, 1, 2, 1));
+		dummy.series = new HashSet<Double>(Arrays.asList(2.5, -1.0, Double.NaN));
+		// bulk copy
+		DummyEntity clone = JpaCloner.clone(dummy, "values", "series");
+		Assert.assertEquals(dummy.values, clone.values);
+		Assert.assertEquals(dummy.series, clone.series);
+		Assert.assertTrue(clone.values instanceof ArrayList);
+		Assert.assertNotSame(dummy.values, clone.values);
+		// primitive collections
+		CloneOptions options = new CloneOptions();
+		options.setPrimitiveCollections(true);
+		clone = JpaCloner.clone(dummy, options, "values", "series");
+		Assert.assertFalse(clone.values instanceof ArrayList);
+		Assert.assertEquals(dummy.values, clone.values);
+		Assert.assertEquals(dummy.series, clone.series);
+		Assert.assertEquals(Arrays.asList(-1.0, 2.5, Double.NaN), new ArrayList<Double>(clone.series));
+		Assert.assertTrue(clone.series.contains(Double.NaN));
+		clone.values.add(4);
+		clone.values.remove(0);
+		Assert.assertEquals(Arrays.asList(1, 2, 1, 4), clone.values);
+		clone.values.subList(1, 3).clear();
+		Assert.assertEquals(Arrays.asList(1, 4), clone.values);
+		clone.values.clear();
+		Assert.assertTrue(clone.values.isEmpty());
+		clone.values.add(5);
+		Assert.assertEquals(Arrays.asList(5), clone.values);
+		Assert.assertTrue(clone.series.add(0.0));
+		Assert.assertFalse(clone.series.add(2.5));
+		Assert.assertTrue(clone.series.remove(-1.0));
+		Assert.assertEquals(Arrays.asList(0.0, 2.5, Double.NaN), new ArrayList<Double>(clone.series));
+		// null elements are not supported by primitive collections
+		dummy.values.add(null);
+		clone = JpaCloner.clone(dummy, options, "values");
+		Assert.assertEquals(dummy.values, clone.values);
+	}
+
+	@Test
+	public void testCloneCache() {
+		Node original = support.getOriginal();
+		CloneCache cache = new CloneCache(10, 0, TimeUnit.SECONDS, CloneCache.Mode.SHARED);
+		Node clone1 = cache.clone(original, "(children.value.child)+", "foo");
+		Node clone2 = cache.clone(original, "foo", "(children.value.child)+", "foo");
+		Assert.assertNotSame(original, clone1);
+		Assert.assertSame(clone1, clone2);
+		Assert.assertNotSame(clone1, cache.clone(original, "foo"));
+		Assert.assertEquals(2, cache.getMisses());
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(2, cache.size());
+		
+		cache = new CloneCache(1, 0, TimeUnit.SECONDS, CloneCache.Mode.COPY);
+		clone1 = cache.clone(original, "(children.value.child)+");
+		clone2 = cache.clone(original, "(children.value.child)+");
+		Assert.assertNotSame(clone1, clone2);
+		Assert.assertEquals(clone1.getChildren().keySet(), clone2.getChildren().keySet());
+		Assert.assertNotSame(clone1.getChildren().get(1), clone2.getChildren().get(1));
+		Assert.assertEquals(1, cache.getHits());
+		cache.clone(original, "foo");
+		Assert.assertEquals(1, cache.getEvictions());
+	}
+
+	@Test
+	public void testCloneCoalescer() throws Exception {
+		final Node original = support.getOriginal();
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch released = new CountDownLatch(1);
+		final CloneOptions options = new CloneOptions(new PropertyFilter() {
+			@Override
+			public boolean test(Object entity, String property) {
+				entered.countDown();
+				try {
+					released.await();
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+				return true;
+			}
+		});
+		final CloneCoalescer coalescer = new CloneCoalescer(CloneCache.Mode.SHARED);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Callable<Node> request = new Callable<Node>() {
+				@Override
+				public Node call() {
+					return coalescer.clone(original, options, "(children.value.child)+");
+				}
+			};
+			List<Future<Node>> results = new ArrayList<Future<Node>>();
+			results.add(executor.submit(request));
+			entered.await();
+			for (int i = 0; i < 3; i++) {
+				results.add(executor.submit(request));
+			}
+			while (coalescer.getCoalesced() < 3) {
+				Thread.sleep(1);
+			}
+			released.countDown();
+			Node clone = results.get(0).get();
+			Assert.assertNotSame(original, clone);
+			for (Future<Node> result : results) {
+				Assert.assertSame(clone, result.get());
+			}
+			// no caching
+			Assert.assertNotSame(clone, coalescer.clone(original, options, "(children.value.child)+"));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testRefresh() {
+		String pattern = "(children.value.child)+.foo";
+		Node original = support.getOriginal();
+		Node clone = JpaCloner.clone(original, pattern);
+		Node child1 = original.getChildren().get(1).getChild();
+		Node child2 = original.getChildren().get(2).getChild();
+		Node child1Clone = clone.getChildren().get(1).getChild();
+		Node child2Clone = clone.getChildren().get(2).getChild();
+		Map<Integer, Edge> child1Children = child1Clone.getChildren();
+		Edge removed = child2.getChildren().remove(3);
+		// change the original graph
+		child2.setName("changed");
+		Node added = new NodeProxy();
+		added.setName("added");
+		Edge edge = new EdgeProxy();
+		edge.setParent(child2);
+		edge.setChild(added);
+		edge.setPosition(4);
+		child2.getChildren().put(4, edge);
+		
+		Node refreshed = JpaCloner.refresh(clone, original, pattern);
+		Assert.assertSame(clone, refreshed);
+		Assert.assertSame(child1Clone, refreshed.getChildren().get(1).getChild());
+		Assert.assertSame(child1Children, child1Clone.getChildren());
+		Assert.assertSame(child2Clone, refreshed.getChildren().get(2).getChild());
+		Assert.assertEquals("changed", child2Clone.getName());
+		Assert.assertEquals(child2.getChildren().keySet(), child2Clone.getChildren().keySet());
+		Assert.assertEquals("added", child2Clone.getChildren().get(4).getChild().getName());
+		Assert.assertNotSame(added, child2Clone.getChildren().get(4).getChild());
+		// the same graph as a fresh clone
+		JpaExplorer refreshedExplorer = JpaExplorer.doExplore(refreshed, pattern);
+		JpaExplorer originalExplorer = JpaExplorer.doExplore(original, pattern);
+		Assert.assertEquals(originalExplorer.entities.keySet(), refreshedExplorer.entities.keySet());
+		Assert.assertFalse(refreshedExplorer.entities.containsKey(removed));
+		// null previous clone
+		Assert.assertNotSame(original, JpaCloner.refresh(null, original, pattern));
+	}
+
+	@Test
+	public void testProjection() {
+		Node original = support.getOriginal();
+		Node clone = JpaCloner.clone(original, "children.value{id}.child{name}.children");
+		Assert.assertEquals(original.getName(), clone.getName());
+		Edge edge = clone.getChildren().get(1);
+		Assert.assertEquals(original.getChildren().get(1), edge);
+		Assert.assertEquals(0, edge.getPosition());
+		Node child = edge.getChild();
+		Assert.assertEquals(original.getChildren().get(1).getChild().getName(), child.getName());
+		Assert.assertEquals(original.getChildren().get(1).getChild().getChildren().keySet(), child.getChildren().keySet());
+		// projections of the same entity are merged
+		clone = JpaCloner.clone(original, "children.value{id}", "children.value{position}");
+		Assert.assertEquals(1, clone.getChildren().get(1).getPosition());
+		// projected properties are merged back, other properties are left intact
+		child.setName("changed");
+		child.getChildren().get(3).setPosition(100);
+		Node managed = original.getChildren().get(1).getChild();
+		JpaCloner.mergeBack(child, managed, "children.value{id}");
+		Assert.assertEquals("changed", managed.getName());
+		Assert.assertEquals(3, managed.getChildren().get(3).getPosition());
+		// a projected path does not narrow entities reached by an unprojected path (in any order)
+		clone = JpaCloner.clone(original, "children.value{id}", "children.value");
+		Assert.assertEquals(1, clone.getChildren().get(1).getPosition());
+		clone = JpaCloner.clone(original, "children.value", "children.value{id}");
+		Assert.assertEquals(1, clone.getChildren().get(1).getPosition());
+		// the same holds for extended explorations
+		CloneOptions options = new CloneOptions();
+		JpaExploration exploration = JpaExploration.explore(original, "children.value");
+		Assert.assertEquals(1, exploration.extend("children.value{id}").clone(original, options).getChildren().get(1).getPosition());
+		exploration = JpaExploration.explore(original, "children.value{id}");
+		Map<Object, Object> originalToClone = exploration.clone(options);
+		Assert.assertEquals(0, ((Node) originalToClone.get(original)).getChildren().get(1).getPosition());
+		exploration.extend("children.value").cloneInto(originalToClone, options);
+		Assert.assertEquals(1, ((Node) originalToClone.get(original)).getChildren().get(1).getPosition());
+	}
+
+	@Test
+	public void testCloneInto() {
+		String pattern = "(children.value.child)+.foo";
+		Node original = support.getOriginal();
+		Node clone = JpaCloner.clone(original, pattern);
+		Node child2 = original.getChildren().get(2).getChild();
+		Node child2Clone = clone.getChildren().get(2).getChild();
+		Map<Integer, Edge> child2Children = child2Clone.getChildren();
+		child2.getChildren().remove(3);
+		child2.setName("changed");
+		
+		Node cloned = JpaCloner.cloneInto(original, clone, pattern);
+		Assert.assertSame(clone, cloned);
+		Assert.assertSame(child2Clone, cloned.getChildren().get(2).getChild());
+		// the changed map is refilled in place
+		Assert.assertSame(child2Children, child2Clone.getChildren());
+		Assert.assertEquals(child2.getChildren().keySet(), child2Children.keySet());
+		Assert.assertEquals("changed", child2Clone.getName());
+		JpaExplorer clonedExplorer = JpaExplorer.doExplore(cloned, pattern);
+		JpaExplorer originalExplorer = JpaExplorer.doExplore(original, pattern);
+		Assert.assertEquals(originalExplorer.entities.keySet(), clonedExplorer.entities.keySet());
+		// unmodifiable collections are replaced
+		CloneOptions options = new CloneOptions();
+		options.setCollectionFactory(CollectionFactories.getCompactFactory());
+		Node compact = JpaCloner.clone(original, options, pattern);
+		Map<Integer, Edge> compactChildren = compact.getChildren();
+		original.getChildren().remove(1);
+		Assert.assertSame(compact, JpaCloner.cloneInto(original, compact, pattern));
+		Assert.assertNotSame(compactChildren, compact.getChildren());
+		Assert.assertEquals(original.getChildren().keySet(), compact.getChildren().keySet());
+	}
+
+	@Test
+	public void testMergeBack() {
+		String pattern = "(children.value.child)+.(foo|point)";
+		Node original = support.getOriginal();
+		Node clone = JpaCloner.clone(original, pattern);
+		Node child = original.getChildren().get(2).getChild();
+		Map<Integer, Edge> children = child.getChildren();
+		Point point = child.getPoint();
+		Node childClone = clone.getChildren().get(2).getChild();
+		// edit the clone
+		childClone.setName("changed");
+		childClone.getPoint().setY(100);
+		childClone.getChildren().remove(3);
+		Edge edge = new Edge();
+		edge.setId(1000);
+		edge.setPosition(4);
+		edge.setParent(childClone);
+		edge.setChild(clone);
+		childClone.getChildren().put(4, edge);
+		
+		Assert.assertSame(original, JpaCloner.mergeBack(clone, original, pattern));
+		Assert.assertEquals("changed", child.getName());
+		Assert.assertSame(point, child.getPoint());
+		Assert.assertEquals(100, point.getY());
+		Assert.assertSame(children, child.getChildren());
+		Assert.assertEquals(new HashSet<Integer>(Arrays.asList(1, 2, 4)), children.keySet());
+		Edge merged = children.get(4);
+		Assert.assertNotSame(edge, merged);
+		Assert.assertSame(child, merged.getParent());
+		Assert.assertSame(original, merged.getChild());
+		Assert.assertTrue(JpaDiff.diff(clone, original, pattern).isEmpty());
+		
+		// relations which are null in the clone are not merged
+		Foo foo = original.getFoo();
+		Assert.assertNotNull(foo);
+		clone.setFoo(null);
+		JpaCloner.mergeBack(clone, original, pattern);
+		Assert.assertSame(foo, original.getFoo());
+		
+		// lists are reconciled by equals (no positional writes)
+		DummyEntity dummy = new DummyEntity();
+		dummy.setId(1);
+		dummy.values = new ArrayList<Integer>(Arrays.asList(1, 2, 3, 4)) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public Integer set(int index, Integer element) {
+				throw new AssertionError("Positional write: " + index);
+			}
+		};
+		List<Integer> values = dummy.values;
+		DummyEntity dummyClone = JpaCloner.clone(dummy, "values");
+		dummyClone.values = new ArrayList<Integer>(Arrays.asList(4, 1, 3, 5, 1));
+		JpaCloner.mergeBack(dummyClone, dummy, "values");
+		Assert.assertSame(values, dummy.values);
+		Assert.assertEquals(Arrays.asList(4, 1, 3, 5, 1), dummy.values);
+	}
+
+	@Test
+	public void testExplain() {
+		PatternExplanation explanation = JpaExplorer.explain(Node.class, "(children.value.child)+.foo.bar", "baz.xyz*");
+		Assert.assertTrue(explanation.getClasses().containsAll(Arrays.asList(Node.class, Edge.class, Foo.class, Bar.class, Baz.class)));
+		Assert.assertFalse(explanation.getClasses().contains(Point.class));
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("children", "foo", "baz")), explanation.getRelations(Node.class));
+		Assert.assertEquals(Collections.singleton("xyz*"), explanation.getUnmatched());
+		Assert.assertEquals(Collections.singleton("(children.value.child)+"), explanation.getUnboundedCycles());
+		// Node.children, Edge.child, Node.foo, Foo.bar, Node.baz
+		Assert.assertEquals(5, explanation.getQueryFanOut());
+		
+		explanation = JpaExplorer.explain(Node.class, "foo.bar");
+		Assert.assertFalse(explanation.isUnbounded());
+		Assert.assertTrue(explanation.getUnmatched().isEmpty());
+	}
 }
@@ -0,0 +1,81 @@
+package sk.nociar.jpacloner;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import sk.nociar.jpacloner.entities.Edge;
+import sk.nociar.jpacloner.entities.Node;
+
+public class JpaCopierTest {
+
+	private ProxyTestSupport support;
+
+	@Before
+	public void setUp() {
+		support = new ProxyTestSupport();
+		support.initialize();
+	}
+
+	@Test
+	public void testCopier() {
+		String pattern = "(children.value.child)+.(point|foo)";
+		Node clone = JpaCloner.clone(support.getOriginal(), pattern);
+		Node copy = JpaCopier.copy(clone);
+		Assert.assertNotSame(clone, copy);
+		Assert.assertNotSame(clone.getPoint(), copy.getPoint());
+		Assert.assertEquals(clone.getPoint().getX(), copy.getPoint().getX());
+		Assert.assertSame(copy, copy.getChildren().get(1).getParent());
+		Assert.assertNotSame(clone.getFoo(), copy.getFoo());
+		Assert.assertNull(copy.getFoo().getBar());
+		JpaExplorer cloneExplorer = JpaExplorer.doExplore(clone, pattern);
+		JpaExplorer copyExplorer = JpaExplorer.doExplore(copy, pattern);
+		Assert.assertEquals(cloneExplorer.getEntities(Node.class), copyExplorer.getEntities(Node.class));
+		Assert.assertEquals(cloneExplorer.getEntities(Edge.class), copyExplorer.getEntities(Edge.class));
+		for (Object entity : copyExplorer.entities.keySet()) {
+			Assert.assertFalse(cloneExplorer.entities.containsKey(entity) && isSameInstance(cloneExplorer.entities.keySet(), entity));
+		}
+		// parallel copies
+		CloneOptions options = new CloneOptions();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Node> copies;
+		try {
+			options.setExecutor(executor);
+			copies = JpaCopier.copy(clone, 8, options);
+		} finally {
+			executor.shutdown();
+		}
+		Assert.assertEquals(8, copies.size());
+		Assert.assertNotSame(copies.get(0), copies.get(1));
+		Assert.assertNotSame(copies.get(0).getChildren(), copies.get(1).getChildren());
+		Assert.assertEquals(clone.getChildren().keySet(), copies.get(7).getChildren().keySet());
+		// the map of original -> clone
+		Map<Node, Node> originalToClone = new HashMap<Node, Node>();
+		originalToClone.put(support.getOriginal(), clone);
+		originalToClone.put(clone.getChildren().get(1).getChild(), clone.getChildren().get(1).getChild());
+		Map<Node, Node> originalToCopy = JpaCopier.copyAll(originalToClone, CollectionFactories.getDefaultFactory());
+		Node rootCopy = originalToCopy.get(support.getOriginal());
+		Assert.assertSame(rootCopy.getChildren().get(1).getChild(), originalToCopy.get(clone.getChildren().get(1).getChild()));
+		// collections of roots
+		List<Node> list = JpaCopier.copy(Arrays.asList(clone, clone.getChildren().get(1).getChild()));
+		Assert.assertSame(list.get(1), list.get(0).getChildren().get(1).getChild());
+	}
+
+
+	private static boolean isSameInstance(Collection<?> collection, Object o) {
+		for (Object element : collection) {
+			if (element == o) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
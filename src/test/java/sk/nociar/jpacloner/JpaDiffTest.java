@@ -0,0 +1,86 @@
+package sk.nociar.jpacloner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import sk.nociar.jpacloner.entities.DummyEntity;
+import sk.nociar.jpacloner.entities.Edge;
+import sk.nociar.jpacloner.entities.Node;
+
+public class JpaDiffTest {
+
+	private ProxyTestSupport support;
+
+	@Before
+	public void setUp() {
+		support = new ProxyTestSupport();
+		support.initialize();
+	}
+
+	@Test
+	public void testDiff() {
+		String pattern = "(children.value.child)+.(foo|point)";
+		Node original = support.getOriginal();
+		Node clone = JpaCloner.clone(original, pattern);
+		Assert.assertTrue(JpaDiff.diff(clone, original, pattern).isEmpty());
+		
+		Node child = original.getChildren().get(2).getChild();
+		Edge removed = child.getChildren().remove(3);
+		child.setName("changed");
+		child.getPoint().setX(100);
+		JpaDiff diff = JpaDiff.diff(clone, original, pattern);
+		Assert.assertTrue(diff.getRemoved().contains(removed.getChild()));
+		Assert.assertTrue(diff.getRemoved().contains(removed));
+		Assert.assertTrue(diff.getAdded().isEmpty());
+		Set<String> changed = new HashSet<String>();
+		for (JpaDiff.Change change : diff.getChanges()) {
+			Assert.assertEquals(child, change.getEntity());
+			changed.add(change.getProperty());
+			if ("children".equals(change.getProperty())) {
+				Assert.assertTrue(change.getAddedElements().isEmpty());
+				Assert.assertEquals(1, change.getRemovedElements().size());
+			}
+		}
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("name", "point.x", "children")), changed);
+	}
+
+	@Test
+	public void testDiffIdentityList() {
+		// lists with the identity equals (e.g. Hibernate bags) are compared element-wise
+		DummyEntity dummy = new DummyEntity();
+		dummy.setId(1);
+		dummy.values = new IdentityList(Arrays.asList(3, 1, 2));
+		DummyEntity clone = JpaCloner.clone(dummy, "values");
+		Assert.assertTrue(JpaDiff.diff(clone, dummy, "values").isEmpty());
+		Assert.assertTrue(JpaDiff.diff(dummy, clone, "values").isEmpty());
+		dummy.values.set(1, 4);
+		JpaDiff diff = JpaDiff.diff(clone, dummy, "values");
+		Assert.assertEquals(1, diff.getChanges().size());
+		Assert.assertEquals("values", diff.getChanges().get(0).getProperty());
+	}
+
+	private static final class IdentityList extends ArrayList<Integer> {
+		private static final long serialVersionUID = 1L;
+
+		private IdentityList(Collection<Integer> elements) {
+			super(elements);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return this == o;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(this);
+		}
+	}
+}
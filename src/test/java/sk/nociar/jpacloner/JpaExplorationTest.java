@@ -0,0 +1,152 @@
+package sk.nociar.jpacloner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.Id;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import sk.nociar.jpacloner.entities.Bar;
+import sk.nociar.jpacloner.entities.Edge;
+import sk.nociar.jpacloner.entities.Foo;
+import sk.nociar.jpacloner.entities.Node;
+import sk.nociar.jpacloner.entities.Point;
+
+public class JpaExplorationTest {
+
+	private ProxyTestSupport support;
+
+	@Before
+	public void setUp() {
+		support = new ProxyTestSupport();
+		support.initialize();
+	}
+
+	@Test
+	public void testExploration() {
+		String pattern = "(children.value.child)+.(point|foo)";
+		Node original = support.getOriginal();
+		JpaExploration exploration = JpaExploration.explore(original, pattern);
+		Assert.assertEquals(JpaExplorer.doExplore(original, pattern).entities.size(), exploration.size());
+		Assert.assertEquals(Collections.singletonList(original), exploration.getRoots());
+		Assert.assertTrue(exploration.getRelations(original).contains("children"));
+		Node clone1 = exploration.clone(original, new CloneOptions());
+		Node clone2 = exploration.clone(original, new CloneOptions(PropertyFilters.getAnnotationFilter(Id.class)));
+		Assert.assertNotSame(clone1, clone2);
+		Assert.assertEquals(original.getName(), clone2.getName());
+		Assert.assertNull(clone2.getId());
+		Assert.assertEquals(original.getId(), clone1.getId());
+		Assert.assertEquals(clone1.getChildren().keySet(), clone2.getChildren().keySet());
+		// fan-out
+		List<Map<Object, Object>> clones = exploration.clone(3, new CloneOptions());
+		Assert.assertEquals(3, clones.size());
+		Node fanOut0 = (Node) clones.get(0).get(original);
+		Node fanOut1 = (Node) clones.get(1).get(original);
+		Assert.assertNotSame(fanOut0, fanOut1);
+		Assert.assertNotSame(fanOut0.getChildren().get(1), fanOut1.getChildren().get(1));
+		Assert.assertSame(fanOut0, fanOut0.getChildren().get(1).getParent());
+		JpaExplorer cloneExplorer = JpaExplorer.doExplore(fanOut1, pattern);
+		Assert.assertEquals(JpaExplorer.doExplore(original, pattern).getEntities(Edge.class), cloneExplorer.getEntities(Edge.class));
+		try {
+			exploration.clone(new Node(), new CloneOptions());
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// not explored
+		}
+	}
+
+	@Test
+	public void testExtendedExploration() {
+		Node original = support.getOriginal();
+		CloneOptions options = new CloneOptions();
+		JpaExploration exploration = JpaExploration.explore(original, "children.value.child");
+		Map<Object, Object> originalToClone = exploration.clone(options);
+		Node clone = (Node) originalToClone.get(original);
+		Map<Integer, Edge> children = clone.getChildren();
+		Node child1 = clone.getChildren().get(1).getChild();
+		Assert.assertNull(clone.getFoo());
+		Assert.assertTrue(child1.getChildren().isEmpty());
+		
+		String pattern = "(children.value.child)+.(point|foo)";
+		JpaExploration extended = exploration.extend(pattern);
+		Assert.assertSame(exploration, extended.getBase());
+		Assert.assertEquals(JpaExplorer.doExplore(original, "children.value.child").entities.size(), exploration.size());
+		Assert.assertEquals(JpaExplorer.doExplore(original, pattern).entities.size(), extended.size());
+		// the extension shares the extended exploration
+		JpaExplorer explorer = JpaExplorer.doExplore(original, pattern);
+		for (Object object : explorer.entities.keySet()) {
+			Assert.assertEquals(explorer.entities.get(object), extended.getRelations(object));
+		}
+		Assert.assertEquals(JpaExplorer.doExplore(original, "children.value.child").entities.size(), exploration.size());
+		JpaExploration twice = extended.extend("foo.bar");
+		explorer = JpaExplorer.doExplore(original, pattern, "foo.bar");
+		Assert.assertEquals(explorer.entities.size(), twice.size());
+		Assert.assertEquals(explorer.getEntities(Bar.class), twice.getEntities(Bar.class));
+		Assert.assertEquals(explorer.getEntities(Node.class), twice.getEntities(Node.class));
+		Assert.assertSame(originalToClone, extended.cloneInto(originalToClone, options));
+		// existing clones are kept, new relations are wired
+		Assert.assertSame(clone, originalToClone.get(original));
+		Assert.assertSame(children, clone.getChildren());
+		Assert.assertSame(child1, clone.getChildren().get(1).getChild());
+		Assert.assertNotNull(clone.getFoo());
+		Assert.assertFalse(child1.getChildren().isEmpty());
+		JpaExplorer cloneExplorer = JpaExplorer.doExplore(clone, pattern);
+		JpaExplorer originalExplorer = JpaExplorer.doExplore(original, pattern);
+		Assert.assertEquals(originalExplorer.getEntities(Node.class), cloneExplorer.getEntities(Node.class));
+		Assert.assertEquals(originalExplorer.getEntities(Edge.class), cloneExplorer.getEntities(Edge.class));
+		Assert.assertEquals(originalExplorer.getEntities(Point.class).size(), cloneExplorer.getEntities(Point.class).size());
+		try {
+			exploration.cloneInto(originalToClone, options);
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			// not extended
+		}
+	}
+
+	@Test
+	public void testExplorationQueries() {
+		String pattern = "(children.value.child)+.(point|foo)";
+		Node original = support.getOriginal();
+		CloneOptions options = new CloneOptions();
+		options.setRecordingParents(true);
+		JpaExploration exploration = JpaExploration.explore(Collections.singleton(original), options, pattern);
+		JpaExplorer explorer = JpaExplorer.doExplore(original, pattern);
+		Assert.assertEquals(explorer.getEntities(Node.class), exploration.getEntities(Node.class));
+		Assert.assertEquals(explorer.getEntities(Edge.class), exploration.getEntities(Edge.class));
+		Assert.assertEquals(explorer.getEntities(Object.class).size(), exploration.getEntities(Object.class).size());
+		Assert.assertTrue(exploration.getEntities(Bar.class).isEmpty());
+		Assert.assertEquals(new HashSet<Class<?>>(Arrays.asList(Node.class, Edge.class, Foo.class, Point.class)), exploration.getClasses());
+		// parent links
+		Assert.assertNull(exploration.getParent(original));
+		Assert.assertEquals(Collections.emptyList(), exploration.getPath(original));
+		Edge edge = original.getChildren().get(1);
+		Assert.assertSame(original, exploration.getParent(edge).getParent());
+		Assert.assertEquals("children", exploration.getParent(edge).getProperty());
+		Assert.assertEquals(Arrays.asList("children", "child"), exploration.getPath(edge.getChild()));
+		Assert.assertEquals(Arrays.asList("point"), exploration.getPath(original.getPoint()));
+		for (Object node : exploration.getEntities(Node.class)) {
+			List<String> path = exploration.getPath(node);
+			Assert.assertTrue(path.isEmpty() || "child".equals(path.get(path.size() - 1)));
+		}
+		Assert.assertNull(exploration.getPath(new Node()));
+		// parent links are kept by extensions
+		JpaExploration extended = exploration.extend("foo.bar");
+		List<String> barPath = new ArrayList<String>(exploration.getPath(original.getFoo()));
+		barPath.add("bar");
+		Assert.assertEquals(barPath, extended.getPath(original.getFoo().getBar()));
+		Assert.assertEquals(Arrays.asList("children", "child"), extended.getPath(edge.getChild()));
+		try {
+			JpaExploration.explore(original, pattern).getParent(original);
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			// not recorded
+		}
+	}
+}
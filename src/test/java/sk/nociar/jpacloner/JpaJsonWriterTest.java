@@ -0,0 +1,49 @@
+package sk.nociar.jpacloner;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import sk.nociar.jpacloner.entities.DummyEntity;
+import sk.nociar.jpacloner.entities.Node;
+
+public class JpaJsonWriterTest {
+
+	private ProxyTestSupport support;
+
+	@Before
+	public void setUp() {
+		support = new ProxyTestSupport();
+		support.initialize();
+	}
+
+	@Test
+	public void testJsonWriter() throws Exception {
+		Node original = support.getOriginal();
+		String pattern = "(children.value.child)+";
+		String json = JpaJsonWriter.toJson(original, pattern);
+		JpaExplorer explorer = JpaExplorer.doExplore(original, pattern);
+		// each explored entity is written once, edges refer back to parents
+		Assert.assertEquals(explorer.entities.size(), json.split("\"@id\"", -1).length - 1);
+		Assert.assertTrue(json.startsWith("{\"@id\":1,\"@type\":\"Node\""));
+		Assert.assertTrue(json.contains("\"parent\":{\"@ref\":1}"));
+		Assert.assertTrue(json.contains("\"name\":\"1\""));
+		// projections and lazy properties
+		DummyEntity dummy = new DummyEntity();
+		dummy.setId(1);
+		dummy.s = "a \"quoted\"\nline";
+		dummy.content = new byte[] { 1, 2 };
+		dummy.values = Arrays.asList(1, 2);
+		StringBuilder sb = new StringBuilder();
+		JpaJsonWriter.write(Collections.singletonList(dummy), sb, "values");
+		Assert.assertTrue(sb.toString().startsWith("[{\"@id\":1,\"@type\":\"DummyEntity\","));
+		Assert.assertFalse(sb.toString().contains("content"));
+		Assert.assertTrue(sb.toString().contains("\"s\":\"a \\\"quoted\\\"\\nline\""));
+		Assert.assertTrue(sb.toString().contains("\"values\":[1,2]"));
+		json = JpaJsonWriter.toJson(dummy, "content");
+		Assert.assertTrue(json.contains("\"content\":[1,2]"));
+	}
+}
@@ -0,0 +1,152 @@
+package sk.nociar.jpacloner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import sk.nociar.jpacloner.entities.DummyEntity;
+import sk.nociar.jpacloner.entities.Edge;
+import sk.nociar.jpacloner.entities.Foo;
+import sk.nociar.jpacloner.entities.Node;
+import sk.nociar.jpacloner.entities.Point;
+
+public class JpaSnapshotTest {
+
+	private ProxyTestSupport support;
+
+	@Before
+	public void setUp() {
+		support = new ProxyTestSupport();
+		support.initialize();
+	}
+
+	@Test
+	public void testSnapshot() throws Exception {
+		Node original = support.getOriginal();
+		String pattern = "(children.value.child)+.(point|foo)";
+		File file = File.createTempFile("snapshot", ".bin");
+		file.deleteOnExit();
+		JpaSnapshot.write(original, file, pattern);
+		JpaSnapshot snapshot = JpaSnapshot.open(file);
+		try {
+			JpaExplorer explorer = JpaExplorer.doExplore(original, pattern);
+			Assert.assertEquals(explorer.getEntities(Node.class).size() + explorer.getEntities(Edge.class).size() 
+					+ explorer.getEntities(Foo.class).size(), snapshot.size());
+			Assert.assertEquals(0, snapshot.getMaterialized());
+			// lazy materialization of a leaf
+			Foo foo = original.getFoo();
+			Foo fooCopy = snapshot.find(Foo.class, foo.getId());
+			Assert.assertEquals(foo, fooCopy);
+			Assert.assertEquals(1, snapshot.getMaterialized());
+			// the whole graph
+			Node copy = (Node) snapshot.getRoots().get(0);
+			Assert.assertNotSame(original, copy);
+			Assert.assertEquals(Node.class, copy.getClass());
+			Assert.assertEquals(original.getPoint().getX(), copy.getPoint().getX());
+			Assert.assertSame(fooCopy, copy.getFoo());
+			Assert.assertSame(copy, copy.getChildren().get(1).getParent());
+			JpaExplorer copyExplorer = JpaExplorer.doExplore(copy, pattern);
+			Assert.assertEquals(explorer.getEntities(Node.class), copyExplorer.getEntities(Node.class));
+			Assert.assertEquals(explorer.getEntities(Edge.class), copyExplorer.getEntities(Edge.class));
+			Assert.assertEquals(explorer.getEntities(Point.class).size(), copyExplorer.getEntities(Point.class).size());
+			Assert.assertEquals(snapshot.size(), snapshot.getMaterialized());
+			Assert.assertNull(snapshot.find(Node.class, -1));
+		} finally {
+			snapshot.close();
+		}
+	}
+
+
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void testSnapshotValues() throws Exception {
+		DummyEntity dummy = new DummyEntity();
+		dummy.created = new Date(86400000L);
+		dummy.modified = new Timestamp(1234567L);
+		dummy.modified.setNanos(567000089);
+		dummy.amount = new BigDecimal("-12345678901234567890.0012");
+		dummy.total = new BigInteger("98765432109876543210");
+		dummy.values = new ArrayList<Integer>(Arrays.asList(1, 2));
+		File file = File.createTempFile("snapshot", ".bin");
+		file.deleteOnExit();
+		JpaSnapshot.write(dummy, file);
+		JpaSnapshot snapshot = JpaSnapshot.open(file);
+		try {
+			DummyEntity copy = (DummyEntity) snapshot.getRoots().get(0);
+			Assert.assertEquals(Date.class, copy.created.getClass());
+			Assert.assertEquals(dummy.created, copy.created);
+			Assert.assertEquals(dummy.modified, copy.modified);
+			Assert.assertEquals(567000089, copy.modified.getNanos());
+			Assert.assertEquals(dummy.amount, copy.amount);
+			Assert.assertEquals(dummy.total, copy.total);
+		} finally {
+			snapshot.close();
+		}
+		// values are never serialized by the Java serialization
+		((List) dummy.values).add(new StringBuilder("serializable"));
+		try {
+			JpaSnapshot.write(dummy, file, "values");
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// unsupported value
+		}
+	}
+
+
+	@Test
+	public void testCorruptSnapshot() throws Exception {
+		Node original = support.getOriginal();
+		File file = File.createTempFile("snapshot", ".bin");
+		file.deleteOnExit();
+		JpaSnapshot.write(original, file, "children");
+		long length = file.length();
+		// a failed write leaves the previous file intact
+		try {
+			JpaSnapshot.write(JpaExplorer.doExplore(original, "children"), Collections.singleton(new Node()), file);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// the root is not explored
+		}
+		Assert.assertEquals(length, file.length());
+		JpaSnapshot.open(file).close();
+		// zero offsets of a partial write
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			randomAccessFile.seek(8);
+			randomAccessFile.write(new byte[32]);
+		} finally {
+			randomAccessFile.close();
+		}
+		assertCorrupt(file);
+		// truncated file
+		randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			randomAccessFile.setLength(20);
+		} finally {
+			randomAccessFile.close();
+		}
+		assertCorrupt(file);
+	}
+
+
+	private static void assertCorrupt(File file) throws IOException {
+		try {
+			JpaSnapshot.open(file).close();
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			Assert.assertTrue(e.getMessage().startsWith("Corrupt snapshot"));
+		}
+	}
+}
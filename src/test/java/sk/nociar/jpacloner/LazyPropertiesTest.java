@@ -0,0 +1,43 @@
+package sk.nociar.jpacloner;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import sk.nociar.jpacloner.entities.DummyEntity;
+
+public class LazyPropertiesTest {
+
+	@Test
+	public void testLazyProperties() {
+		DummyEntity dummy = new DummyEntity();
+		dummy.setId(123);
+		dummy.s = "hello world";
+		dummy.content = new byte[] { 1, 2, 3 };
+		dummy.description = "description";
+		// lazy properties are skipped by default
+		DummyEntity clone = JpaCloner.clone(dummy);
+		Assert.assertEquals(dummy.s, clone.s);
+		Assert.assertNull(clone.content);
+		Assert.assertNull(clone.description);
+		Assert.assertTrue(JpaDiff.diff(clone, dummy).isEmpty());
+		// requested explicitly
+		clone = JpaCloner.clone(dummy, "content");
+		Assert.assertArrayEquals(dummy.content, clone.content);
+		Assert.assertNull(clone.description);
+		clone = JpaCloner.clone(dummy, "*");
+		Assert.assertNull(clone.content);
+		Assert.assertTrue(JpaExplorer.explain(DummyEntity.class, "content|description").getUnmatched().isEmpty());
+		// merge
+		clone = JpaCloner.clone(dummy, "content|description");
+		clone.description = "changed";
+		Assert.assertEquals(1, JpaDiff.diff(dummy, clone, "description").getChanges().size());
+		JpaCloner.mergeBack(clone, dummy, "description");
+		Assert.assertEquals("changed", dummy.description);
+		// copy() copies all basic properties
+		DummyEntity copy = new DummyEntity();
+		JpaCloner.copy(dummy, copy);
+		Assert.assertArrayEquals(dummy.content, copy.content);
+		Assert.assertEquals(dummy.description, copy.description);
+		Assert.assertTrue(JpaClassInfo.get(DummyEntity.class).getBaseProperties().contains("content"));
+	}
+}
@@ -0,0 +1,76 @@
+package sk.nociar.jpacloner;
+
+import sk.nociar.jpacloner.entities.Bar;
+import sk.nociar.jpacloner.entities.Baz;
+import sk.nociar.jpacloner.entities.Edge;
+import sk.nociar.jpacloner.entities.Foo;
+import sk.nociar.jpacloner.entities.Node;
+import sk.nociar.jpacloner.entities.Point;
+
+/**
+ * Test graph of in-memory entities with ids, entities are instances of "proxy" subclasses.
+ */
+class ProxyTestSupport extends JpaClonerTestSupport {
+	
+	private static int idGenerator = 0;
+	
+	static class EdgeProxy extends Edge {
+		EdgeProxy() {
+			setId(idGenerator++);
+		}
+	}
+	
+	static class NodeProxy extends Node {
+		NodeProxy() {
+			setId(idGenerator++);
+		}
+	}
+	
+	static class FooProxy extends Foo {
+		FooProxy() {
+			setId(idGenerator++);
+		}
+	}
+	
+	static class BarProxy extends Bar {
+		BarProxy() {
+			setId(idGenerator++);
+		}
+	}
+
+	static class BazProxy extends Baz {
+		BazProxy() {
+			setId(idGenerator++);
+		}
+	}
+
+	@Override
+	protected Node createNode() {
+		return new NodeProxy();
+	}
+
+	@Override
+	protected Edge createEdge() {
+		return new EdgeProxy();
+	}
+
+	@Override
+	protected Point createPoint() {
+		return new Point(1, 2);
+	}
+
+	@Override
+	protected Foo createFoo() {
+		return new FooProxy();
+	}
+
+	@Override
+	protected Bar createBar() {
+		return new BarProxy();
+	}
+
+	@Override
+	protected Baz createBaz() {
+		return new BazProxy();
+	}
+}
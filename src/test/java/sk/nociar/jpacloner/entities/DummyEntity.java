@@ -1,9 +1,35 @@
 package sk.nociar.jpacloner.entities;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.Basic;
+import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Lob;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
 
 @Entity
 public class DummyEntity extends BaseEntity {
 	public int i;
 	public String s;
+	@ElementCollection
+	public List<Integer> values;
+	@ElementCollection
+	public Set<Double> series;
+	@Lob
+	public byte[] content;
+	@Basic(fetch = FetchType.LAZY)
+	public String description;
+	@Temporal(TemporalType.DATE)
+	public Date created;
+	public Timestamp modified;
+	public BigDecimal amount;
+	public BigInteger total;
 }
@@ -1,7 +1,15 @@
 package sk.nociar.jpacloner.graphs;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
 import org.junit.Test;
 
+import sk.nociar.jpacloner.cache.BoundedCache;
 import sk.nociar.jpacloner.graphs.GraphExplorer;
 
 public class GraphExplorerTest {
@@ -42,4 +50,100 @@ public class GraphExplorerTest {
 		GraphExplorer.get("(aaa)*");
 	}
 
+	@Test(expected = RuntimeException.class)
+	public void testException7() {
+		GraphExplorer.get("a b");
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testException8() {
+		GraphExplorer.get("a{x*}");
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testException9() {
+		GraphExplorer.get("a{x,}");
+	}
+
+	@Test
+	public void testParser() {
+		Assert.assertEquals("a.b.c", GraphExplorer.get(" a . b.c ").toString());
+		Assert.assertEquals("a|b.c", GraphExplorer.get("a|(b.c)").toString());
+		Assert.assertEquals("(a|b).c", GraphExplorer.get("(a|b).c").toString());
+		Assert.assertEquals("a.b+.(c$|d)", GraphExplorer.get("a.b+.(c$|d)").toString());
+		Assert.assertEquals("(a.b)+$", GraphExplorer.get("((a.b)+)$").toString());
+		Assert.assertEquals("chil*n", GraphExplorer.get("chil*n").toString());
+		Assert.assertEquals("a{x,y}.b{z}", GraphExplorer.get("a{ y, x }.b{z}").toString());
+		Assert.assertEquals("(a|b){x}+", GraphExplorer.get("(a|b){x}+").toString());
+	}
+
+	@Test
+	public void testCache() {
+		Assert.assertSame(GraphExplorer.get("x.y.z"), GraphExplorer.get("x.y.z"));
+		Assert.assertSame(WildcardPattern.get("x*"), GraphExplorer.get("x*"));
+		
+		BoundedCache<Integer, Integer> cache = new BoundedCache<Integer, Integer>(10);
+		for (int i = 0; i < 100; i++) {
+			cache.putIfAbsent(i, i);
+			Assert.assertTrue(cache.size() <= 10);
+		}
+		Assert.assertEquals(90, cache.getEvictions());
+		Assert.assertEquals(Integer.valueOf(99), cache.get(99));
+		Assert.assertNull(cache.get(0));
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(1, cache.getMisses());
+		// time to live
+		cache.setTimeToLive(1, TimeUnit.NANOSECONDS);
+		Assert.assertNull(cache.get(99));
+		Assert.assertEquals(91, cache.getEvictions());
+		Assert.assertEquals(Integer.valueOf(-1), cache.putIfAbsent(98, -1));
+		cache.setTimeToLive(0, TimeUnit.NANOSECONDS);
+		Assert.assertEquals(Integer.valueOf(-1), cache.get(98));
+	}
+
+	@Test
+	public void testWildcard() {
+		Assert.assertTrue(WildcardPattern.get("chil*n").matches("children"));
+		Assert.assertTrue(WildcardPattern.get("chil*n").matches("chiln"));
+		Assert.assertFalse(WildcardPattern.get("chil*n").matches("childrens"));
+		Assert.assertTrue(WildcardPattern.get("*a*b?").matches("xxaxxabc"));
+		Assert.assertFalse(WildcardPattern.get("*a*b?").matches("xxaxxab"));
+		Assert.assertTrue(WildcardPattern.get("**").matches(""));
+		Assert.assertFalse(WildcardPattern.get("?").matches(""));
+	}
+
+	@Test
+	public void testWildcardWithMutableProperties() {
+		// a third party explorer which reuses one mutable collection of properties
+		final List<String> properties = new ArrayList<String>();
+		EntityExplorer explorer = new EntityExplorer() {
+			@Override
+			public Collection<String> getProperties(Object entity) {
+				properties.clear();
+				properties.add(entity + "1");
+				properties.add(entity + "2");
+				return properties;
+			}
+			@Override
+			public Collection<?> explore(Object entity, String property) {
+				return Collections.singleton(property);
+			}
+		};
+		GraphExplorer pattern = GraphExplorer.get("*1");
+		Assert.assertEquals(Collections.singleton("a1"), pattern.explore(Collections.singleton("a"), explorer));
+		Assert.assertEquals(Collections.singleton("b1"), pattern.explore(Collections.singleton("b"), explorer));
+	}
+
+	@Test
+	public void testOptimize() {
+		Assert.assertEquals("a.(b|c.(d)?)", GraphExplorer.get("a.b|a.c|a.c.d").toString());
+		Assert.assertEquals("a|b", GraphExplorer.get("a|b|a").toString());
+		Assert.assertEquals("x+", GraphExplorer.get("(x+)+").toString());
+		Assert.assertEquals("x$", GraphExplorer.get("x$$").toString());
+		Assert.assertEquals("x$", GraphExplorer.get("(x$)+").toString());
+		Assert.assertEquals("a.b$", GraphExplorer.get("a.b$.c").toString());
+		Assert.assertEquals("(a|b)$|c", GraphExplorer.get("a$|c|b$").toString());
+		Assert.assertEquals("a.(b.c)?", GraphExplorer.get("(a.b).c|a").toString());
+	}
+
 }